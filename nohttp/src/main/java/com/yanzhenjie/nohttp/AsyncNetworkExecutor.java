@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import com.yanzhenjie.nohttp.able.Cancelable;
+
+/**
+ * <p>
+ * Execute the request without holding a thread while waiting for the server.
+ * </p>
+ * <p>
+ * The request is prepared as the {@link NetworkExecutor}, the headers such as {@code Content-Type},
+ * {@code Content-Length} and {@code Cookie} have been set, the body is written by the executor through
+ * {@link BasicRequest#onWriteRequestBody(java.io.OutputStream)}.
+ * </p>
+ * It is for the callers driving the network by themselves. The request and download queues and the sync executors
+ * of NoHttp always call {@link NetworkExecutor#execute(BasicRequest)}, so each request executed by them holds a
+ * thread while waiting for the server, whichever executor is configured.
+ *
+ * @see com.yanzhenjie.nohttp.nio.NioNetworkExecutor
+ */
+public interface AsyncNetworkExecutor {
+
+    /**
+     * Perform network connection asynchronously.
+     *
+     * @param request  {@link BasicRequest}.
+     * @param callback called when the response headers are received or the request fails, it may be called on the
+     *                 thread of the executor, so it should not block.
+     * @return cancel the request, the callback is called with an exception if it has not been called.
+     */
+    Cancelable execute(BasicRequest<?> request, Callback callback);
+
+    interface Callback {
+
+        /**
+         * The response headers are received, the body is read from {@link Network#getServerStream(int, Headers)}.
+         *
+         * @param network {@link Network}, it must be closed after reading.
+         */
+        void onResponse(Network network);
+
+        /**
+         * The request failed.
+         *
+         * @param e exception.
+         */
+        void onFailure(Exception e);
+    }
+}
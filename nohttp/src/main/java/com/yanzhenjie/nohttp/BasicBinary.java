@@ -141,7 +141,7 @@ public abstract class BasicBinary
     protected void postStart() {
         UploadPoster start = new UploadPoster(what, mUploadListener);
         start.start();
-        HandlerDelivery.getInstance().post(start);
+        NoHttp.getInitializeConfig().getDelivery().post(start);
     }
 
     /**
@@ -152,7 +152,7 @@ public abstract class BasicBinary
     protected void postProgress(int progress) {
         UploadPoster progressPoster = new UploadPoster(what, mUploadListener);
         progressPoster.progress(progress);
-        HandlerDelivery.getInstance().post(progressPoster);
+        NoHttp.getInitializeConfig().getDelivery().post(progressPoster);
     }
 
     /**
@@ -161,7 +161,7 @@ public abstract class BasicBinary
     protected void postCancel() {
         UploadPoster cancelPoster = new UploadPoster(what, mUploadListener);
         cancelPoster.cancel();
-        HandlerDelivery.getInstance().post(cancelPoster);
+        NoHttp.getInitializeConfig().getDelivery().post(cancelPoster);
     }
 
     /**
@@ -172,7 +172,7 @@ public abstract class BasicBinary
     protected void postError(Exception e) {
         UploadPoster error = new UploadPoster(what, mUploadListener);
         error.error(e);
-        HandlerDelivery.getInstance().post(error);
+        NoHttp.getInitializeConfig().getDelivery().post(error);
     }
 
     /**
@@ -181,7 +181,7 @@ public abstract class BasicBinary
     protected void postFinish() {
         UploadPoster finish = new UploadPoster(what, mUploadListener);
         finish.finish();
-        HandlerDelivery.getInstance().post(finish);
+        NoHttp.getInitializeConfig().getDelivery().post(finish);
     }
 
     /**
@@ -15,6 +15,7 @@
  */
 package com.yanzhenjie.nohttp;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.yanzhenjie.nohttp.able.Cancelable;
@@ -93,10 +94,22 @@ public class BasicRequest<T extends BasicRequest>
      * Read data timeout.
      */
     private int mReadTimeout = NoHttp.getInitializeConfig().getReadTimeout();
+    /**
+     * Deadline of handle.
+     */
+    private int mDeadline;
+    /**
+     * The time when the deadline expires, 0 means it has not been started.
+     */
+    private volatile long mDeadlineTime;
     /**
      * After the failure of retries.
      */
     private int mRetryCount = NoHttp.getInitializeConfig().getRetryCount();
+    /**
+     * Decide whether and when to retry.
+     */
+    private RetryPolicy mRetryPolicy = NoHttp.getInitializeConfig().getRetryPolicy();
     /**
      * The params encoding.
      */
@@ -113,6 +126,10 @@ public class BasicRequest<T extends BasicRequest>
      * RequestBody.
      */
     private InputStream mRequestBody;
+    /**
+     * The position of the file body where it starts, the body is sent from here again when retrying.
+     */
+    private long mRequestBodyOffset;
     /**
      * Redirect handler.
      */
@@ -134,6 +151,11 @@ public class BasicRequest<T extends BasicRequest>
      */
     private Object mTag;
     private Cancelable mCancelable;
+    /**
+     * The network being executed, it is closed when the handle is aborted.
+     */
+    private volatile Network mNetwork;
+    private volatile boolean isAborted;
 
     /**
      * Create a handle, RequestMethod is {@link RequestMethod#GET}.
@@ -330,10 +352,10 @@ public class BasicRequest<T extends BasicRequest>
     }
 
     /**
-     * Get the connection timeout time, Unit is a millisecond.
+     * Get the connection timeout time, Unit is a millisecond, it is no longer than the time left before the deadline.
      */
     public int getConnectTimeout() {
-        return mConnectTimeout;
+        return clampTimeout(mConnectTimeout);
     }
 
     /**
@@ -347,10 +369,84 @@ public class BasicRequest<T extends BasicRequest>
     }
 
     /**
-     * Get the read timeout time, Unit is a millisecond.
+     * Get the read timeout time, Unit is a millisecond, it is no longer than the time left before the deadline.
      */
     public int getReadTimeout() {
-        return mReadTimeout;
+        return clampTimeout(mReadTimeout);
+    }
+
+    private int clampTimeout(int timeout) {
+        long remaining = getRemainingTime();
+        if (remaining == Long.MAX_VALUE) return timeout;
+        // 0 means infinite for the socket, so at least 1.
+        int clamped = (int)Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+        return timeout <= 0 ? clamped : Math.min(timeout, clamped);
+    }
+
+    /**
+     * Set the deadline, the handle must finish within it after it is added to the queue, including the time waiting
+     * in the queue, all the retries, the redirects and reading the body. When it expires the handle fails with
+     * {@link com.yanzhenjie.nohttp.error.TimeoutError}. The queue using {@link SchedulePolicy#EARLIEST_DEADLINE}
+     * executes the handle with the earliest deadline first.
+     *
+     * @param millis deadline number, unit is a millisecond, the default value is 0, that is to say, no deadline.
+     */
+    public T setDeadline(int millis) {
+        mDeadline = millis;
+        return (T)this;
+    }
+
+    /**
+     * Get the deadline, Unit is a millisecond.
+     */
+    public int getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Start counting down the deadline, it is called when the handle is added to the queue or executed, it does
+     * nothing if the deadline has been started or there is no deadline.
+     */
+    public void startDeadline() {
+        if (mDeadline > 0 && mDeadlineTime == 0) mDeadlineTime = SystemClock.elapsedRealtime() + mDeadline;
+    }
+
+    /**
+     * Stop counting down the deadline, it is called when the handle finishes or is taken back from the queue, so
+     * the deadline is started again and the abort is cleared when the handle is added again.
+     */
+    public void resetDeadline() {
+        mDeadlineTime = 0;
+        isAborted = false;
+        mNetwork = null;
+    }
+
+    /**
+     * Get the time left before the deadline, Unit is a millisecond.
+     *
+     * @return {@link Long#MAX_VALUE} if there is no deadline or it has not been started.
+     */
+    public long getRemainingTime() {
+        if (mDeadlineTime == 0) return Long.MAX_VALUE;
+        return mDeadlineTime - SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Whether the deadline has expired.
+     */
+    public boolean isExpired() {
+        return getRemainingTime() <= 0;
+    }
+
+    long getDeadlineTime() {
+        return mDeadlineTime;
+    }
+
+    /**
+     * Share the deadline of another handle, such as the redirect handle.
+     */
+    void setDeadlineTime(long deadlineTime) {
+        this.mDeadlineTime = deadlineTime;
     }
 
     /**
@@ -450,6 +546,25 @@ public class BasicRequest<T extends BasicRequest>
         return mRetryCount;
     }
 
+    /**
+     * Set the policy that decides whether and when to retry.
+     *
+     * @param policy the default value is the policy of {@code InitializationConfig}.
+     * @see RetryPolicy.Backoff
+     */
+    public T setRetryPolicy(RetryPolicy policy) {
+        if (policy == null) throw new IllegalArgumentException("The policy can not be null.");
+        this.mRetryPolicy = policy;
+        return (T)this;
+    }
+
+    /**
+     * Get the policy that decides whether and when to retry.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
     /**
      * Add a new key-value header.
      *
@@ -922,12 +1037,28 @@ public class BasicRequest<T extends BasicRequest>
         validateParamForBody(requestBody, contentType);
         if (requestBody instanceof ByteArrayInputStream || requestBody instanceof FileInputStream) {
             this.mRequestBody = requestBody;
+            markRequestBody();
             mHeaders.set(Headers.HEAD_KEY_CONTENT_TYPE, contentType);
         } else throw new IllegalArgumentException(
           "Can only accept ByteArrayInputStream and FileInputStream " + "type of stream");
         return (T)this;
     }
 
+    /**
+     * Remember where the body starts, so it can be sent again.
+     */
+    private void markRequestBody() {
+        if (mRequestBody instanceof FileInputStream) {
+            try {
+                mRequestBodyOffset = ((FileInputStream)mRequestBody).getChannel().position();
+            } catch (IOException e) {
+                mRequestBodyOffset = 0;
+            }
+        } else {
+            mRequestBody.mark(Integer.MAX_VALUE);
+        }
+    }
+
     /**
      * Set the handle body and content type.
      *
@@ -944,9 +1075,11 @@ public class BasicRequest<T extends BasicRequest>
         validateParamForBody(requestBody, contentType);
         try {
             mRequestBody = IOUtils.toInputStream(requestBody, getParamsEncoding());
+            markRequestBody();
             mHeaders.set(Headers.HEAD_KEY_CONTENT_TYPE, contentType + "; charset=" + getParamsEncoding());
         } catch (UnsupportedEncodingException e) {
             mRequestBody = IOUtils.toInputStream(requestBody);
+            markRequestBody();
             mHeaders.set(Headers.HEAD_KEY_CONTENT_TYPE, contentType);
         }
         return (T)this;
@@ -1031,16 +1164,42 @@ public class BasicRequest<T extends BasicRequest>
      */
     private void writeRequestBody(OutputStream writer) throws IOException {
         if (mRequestBody != null) {
+            // The body may have been sent by the last attempt.
+            if (mRequestBody instanceof FileInputStream)
+                ((FileInputStream)mRequestBody).getChannel().position(mRequestBodyOffset);
+            else mRequestBody.reset();
+
             if (writer instanceof CounterOutputStream) {
                 ((CounterOutputStream)writer).writeLength(mRequestBody.available());
             } else {
                 IOUtils.write(mRequestBody, writer);
-                IOUtils.closeQuietly(mRequestBody);
-                mRequestBody = null;
             }
         }
     }
 
+    /**
+     * Close the body after the request is sent, it can not be sent again.
+     */
+    void closeRequestBody() {
+        IOUtils.closeQuietly(mRequestBody);
+        mRequestBody = null;
+    }
+
+    /**
+     * Whether the body can be sent again, such as when the request is retried.
+     */
+    @SuppressWarnings("deprecation")
+    public boolean isReplayable() {
+        if (hasDefineRequestBody() || !isMultipartFormEnable()) return true;
+        for (String key : mParams.keySet()) {
+            for (Object value : mParams.getValues(key)) {
+                // The stream of the InputStreamBinary is closed after it is sent.
+                if (value instanceof InputStreamBinary) return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Send form data.
      */
@@ -1212,12 +1371,14 @@ public class BasicRequest<T extends BasicRequest>
     }
 
     /**
-     * Cancel operation by contrast the sign.
+     * Cancel operation by contrast the sign, the request whose sign is a child of the {@link CancelGroup} is also
+     * canceled.
      *
      * @param sign an object that can be null.
      */
     public void cancelBySign(Object sign) {
-        if (mCancelSign == sign || (mCancelSign != null && mCancelSign.equals(sign))) {
+        if (mCancelSign == sign || (mCancelSign != null && mCancelSign.equals(sign)) ||
+            (mCancelSign instanceof CancelGroup && ((CancelGroup)mCancelSign).isIn(sign))) {
             cancel();
         }
     }
@@ -1226,6 +1387,31 @@ public class BasicRequest<T extends BasicRequest>
         this.mCancelable = cancelable;
     }
 
+    /**
+     * Abort the handle being executed on another thread, the network being executed is closed, so the thread waiting
+     * for the response fails at once, and the handle is not retried. Unlike {@link #cancel()}, the handle is not
+     * canceled, such as the losing attempt of a hedged handle.
+     */
+    public void abort() {
+        isAborted = true;
+        IOUtils.closeQuietly(mNetwork);
+    }
+
+    /**
+     * Whether the handle has been aborted.
+     */
+    public boolean isAborted() {
+        return isAborted;
+    }
+
+    /**
+     * The network created for the handle, it is closed at once if the handle has been aborted.
+     */
+    void setNetwork(Network network) {
+        this.mNetwork = network;
+        if (isAborted) IOUtils.closeQuietly(network);
+    }
+
     ////////// static module /////////
 
     /**
@@ -0,0 +1,245 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import android.os.SystemClock;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Cache the addresses resolved by another {@link Dns} in memory, so the requests do not wait for the resolver. The
+ * addresses of a host are kept for the ttl, a host that can not be resolved is remembered for the negative ttl.
+ * </p>
+ * A host used again after three quarters of its ttl is resolved again in the background, so a busy host never waits
+ * for its expiry. The resolved addresses are ordered by alternating IPv6 and IPv4, starting with the family of the
+ * first address, so the connection falls back to the other family quickly.
+ */
+public class CachedDns
+  implements Dns {
+
+    /**
+     * The max number of the hosts in the cache.
+     */
+    private static final int MAX_SIZE = 256;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "NoHttp Dns #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final Executor PREFETCH_EXECUTOR = Executors.newCachedThreadPool(THREAD_FACTORY);
+
+    private final Dns mDelegate;
+    private final long mTtl;
+    private final long mNegativeTtl;
+    private final Map<String, List<InetAddress>> mHosts = new HashMap<>();
+    private final Set<String> mResolving = new HashSet<>();
+    private final Map<String, Entry> mCache = new LinkedHashMap<String, Entry>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * Cache the addresses resolved by the system for one minute, and the unknown hosts for ten seconds.
+     */
+    public CachedDns() {
+        this(Dns.SYSTEM, 60 * 1000, 10 * 1000);
+    }
+
+    /**
+     * @param delegate    resolves the hosts missing in the cache.
+     * @param ttl         the time the addresses of a host are kept in milliseconds.
+     * @param negativeTtl the time an unknown host is remembered in milliseconds, 0 means never.
+     */
+    public CachedDns(Dns delegate, long ttl, long negativeTtl) {
+        if (delegate == null) throw new IllegalArgumentException("The delegate can not be null.");
+        if (ttl <= 0) throw new IllegalArgumentException("The ttl must be greater than 0.");
+        if (negativeTtl < 0) throw new IllegalArgumentException("The negativeTtl can not be less than 0.");
+        this.mDelegate = delegate;
+        this.mTtl = ttl;
+        this.mNegativeTtl = negativeTtl;
+    }
+
+    /**
+     * Resolve the host to the static addresses rather than the resolver, such as a test server or a known ip.
+     *
+     * @param host      the host name.
+     * @param addresses the addresses of the host, in the order to connect.
+     */
+    public void setHost(String host, InetAddress... addresses) {
+        if (host == null) throw new IllegalArgumentException("The host can not be null.");
+        if (addresses == null || addresses.length == 0)
+            throw new IllegalArgumentException("The addresses can not be empty.");
+        List<InetAddress> list = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(addresses)));
+        synchronized (this) {
+            mHosts.put(host.toLowerCase(Locale.ENGLISH), list);
+        }
+    }
+
+    /**
+     * Remove the static addresses of the host, it is resolved by the resolver again.
+     */
+    public synchronized void removeHost(String host) {
+        if (host != null) mHosts.remove(host.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Resolve the hosts in the background, the hosts in the cache are skipped.
+     */
+    public void prefetch(String... hosts) {
+        long now = SystemClock.elapsedRealtime();
+        for (String host : hosts) {
+            if (host == null) continue;
+            String key = host.toLowerCase(Locale.ENGLISH);
+            Entry entry;
+            synchronized (this) {
+                if (mHosts.containsKey(key)) continue;
+                entry = mCache.get(key);
+            }
+            if (entry == null || now >= entry.refreshTime) resolveAsync(key);
+        }
+    }
+
+    /**
+     * Remove all the resolved addresses, the static addresses are kept.
+     */
+    public synchronized void clear() {
+        mCache.clear();
+    }
+
+    @Override
+    public List<InetAddress> lookup(String host) throws UnknownHostException {
+        if (host == null) throw new UnknownHostException("The host is null.");
+        String key = host.toLowerCase(Locale.ENGLISH);
+        Entry entry;
+        synchronized (this) {
+            List<InetAddress> addresses = mHosts.get(key);
+            if (addresses != null) return addresses;
+            entry = mCache.get(key);
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (entry == null || now >= entry.expiryTime) return resolve(key, false);
+        if (entry.addresses == null) throw new UnknownHostException(host);
+        if (now >= entry.refreshTime) resolveAsync(key);
+        return entry.addresses;
+    }
+
+    private List<InetAddress> resolve(String host, boolean isBackground) throws UnknownHostException {
+        List<InetAddress> addresses;
+        try {
+            addresses = mDelegate.lookup(host);
+            if (addresses == null || addresses.isEmpty()) throw new UnknownHostException(host);
+        } catch (UnknownHostException e) {
+            // The addresses are kept until they expire if they fail to refresh.
+            if (!isBackground && mNegativeTtl > 0) {
+                long now = SystemClock.elapsedRealtime();
+                synchronized (this) {
+                    mCache.put(host, new Entry(null, now + mNegativeTtl, now + mNegativeTtl));
+                }
+            }
+            throw e;
+        }
+
+        addresses = Collections.unmodifiableList(interleave(addresses));
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            mCache.put(host, new Entry(addresses, now + mTtl, now + mTtl * 3 / 4));
+        }
+        return addresses;
+    }
+
+    private void resolveAsync(final String host) {
+        synchronized (this) {
+            if (!mResolving.add(host)) return;
+        }
+        PREFETCH_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resolve(host, true);
+                } catch (UnknownHostException e) {
+                    Logger.w("Prefetch " + host + " failed: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    Logger.w(e);
+                } finally {
+                    synchronized (CachedDns.this) {
+                        mResolving.remove(host);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Alternate the IPv6 and IPv4 addresses, starting with the family of the first address.
+     */
+    private static List<InetAddress> interleave(List<InetAddress> addresses) {
+        List<InetAddress> first = new ArrayList<>();
+        List<InetAddress> second = new ArrayList<>();
+        boolean isFirstV6 = addresses.get(0) instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            if ((address instanceof Inet6Address) == isFirstV6) first.add(address);
+            else second.add(address);
+        }
+        List<InetAddress> result = new ArrayList<>(addresses.size());
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) result.add(first.get(i));
+            if (i < second.size()) result.add(second.get(i));
+        }
+        return result;
+    }
+
+    private static class Entry {
+
+        /**
+         * Null if the host can not be resolved.
+         */
+        private final List<InetAddress> addresses;
+        private final long expiryTime;
+        private final long refreshTime;
+
+        private Entry(List<InetAddress> addresses, long expiryTime, long refreshTime) {
+            this.addresses = addresses;
+            this.expiryTime = expiryTime;
+            this.refreshTime = refreshTime;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+/**
+ * <p>
+ * A cancel sign that can have a parent, canceling a group also cancels the requests of its children.
+ * </p>
+ * For example, the requests of a fragment use a child group of the activity's group, so they are canceled with the
+ * activity:
+ * <pre>
+ * CancelGroup activityGroup = new CancelGroup();
+ * CancelGroup fragmentGroup = new CancelGroup(activityGroup);
+ * request.setCancelSign(fragmentGroup);
+ * ...
+ * queue.cancelBySign(activityGroup);
+ * </pre>
+ */
+public class CancelGroup {
+
+    private final CancelGroup mParent;
+
+    public CancelGroup() {
+        this(null);
+    }
+
+    /**
+     * @param parent the parent group, it can be null.
+     */
+    public CancelGroup(CancelGroup parent) {
+        this.mParent = parent;
+    }
+
+    public CancelGroup getParent() {
+        return mParent;
+    }
+
+    /**
+     * Is this group the sign, or one of its children.
+     *
+     * @param sign a object.
+     */
+    public boolean isIn(Object sign) {
+        for (CancelGroup group = this; group != null; group = group.mParent) {
+            if (group == sign || group.equals(sign)) return true;
+        }
+        return false;
+    }
+}
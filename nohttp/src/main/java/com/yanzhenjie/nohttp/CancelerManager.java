@@ -17,18 +17,32 @@ package com.yanzhenjie.nohttp;
 
 import com.yanzhenjie.nohttp.able.Cancelable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 /**
+ * <p>
+ * The requests are indexed by their cancel sign when they are added, so canceling a sign only touches the
+ * requests of the sign. The request whose sign is a {@link CancelGroup} is also indexed by the parents of the
+ * group.
+ * </p>
+ * The cancel sign should be set before the request is added.
  * Created by YanZhenjie on 2018/2/27.
  */
 public class CancelerManager {
 
     private final Map<BasicRequest<?>, Cancelable> mCancelMap;
+    private final Map<Object, Set<BasicRequest<?>>> mSignMap;
+    private final Map<BasicRequest<?>, Object> mRequestSigns;
 
     public CancelerManager() {
-        this.mCancelMap = new ConcurrentHashMap<>();
+        this.mCancelMap = new HashMap<>();
+        this.mSignMap = new HashMap<>();
+        this.mRequestSigns = new HashMap<>();
     }
 
     /**
@@ -38,7 +52,19 @@ public class CancelerManager {
      * @param cancelable canceller.
      */
     public void addCancel(BasicRequest<?> request, Cancelable cancelable) {
-        mCancelMap.put(request, cancelable);
+        Object sign = request.getCancelSign();
+        synchronized (this) {
+            if (mCancelMap.put(request, cancelable) != null) unIndex(request);
+            mRequestSigns.put(request, sign);
+            for (Object key : indexKeys(sign)) {
+                Set<BasicRequest<?>> requests = mSignMap.get(key);
+                if (requests == null) {
+                    requests = new LinkedHashSet<>();
+                    mSignMap.put(key, requests);
+                }
+                requests.add(request);
+            }
+        }
     }
 
     /**
@@ -47,34 +73,71 @@ public class CancelerManager {
      * @param request target request.
      */
     public void removeCancel(BasicRequest<?> request) {
-        mCancelMap.remove(request);
+        synchronized (this) {
+            if (mCancelMap.remove(request) != null) unIndex(request);
+        }
     }
 
     /**
-     * According to the sign to cancel a task.
+     * According to the sign to cancel a task, if the sign is a {@link CancelGroup}, the tasks of its children are
+     * also canceled.
      *
      * @param sign sign.
      */
     public void cancel(Object sign) {
-        for (Map.Entry<BasicRequest<?>, Cancelable> entry : mCancelMap.entrySet()) {
-            BasicRequest<?> request = entry.getKey();
-            Object olgSign = request.getCancelSign();
-            if ((sign == olgSign) || (sign != null && sign.equals(olgSign))) {
-                entry.getValue().cancel();
+        List<Cancelable> cancelables;
+        synchronized (this) {
+            Set<BasicRequest<?>> requests = mSignMap.get(sign);
+            if (requests == null) return;
+            cancelables = new ArrayList<>(requests.size());
+            for (BasicRequest<?> request : requests) {
+                cancelables.add(mCancelMap.get(request));
             }
         }
+        // The canceled task is removed by its callback, so it can not be canceled in the lock.
+        for (Cancelable cancelable : cancelables) {
+            cancelable.cancel();
+        }
     }
 
     /**
      * Cancel all tasks.
      */
     public void cancelAll() {
-        for (Map.Entry<BasicRequest<?>, Cancelable> entry : mCancelMap.entrySet()) {
-            entry.getValue().cancel();
+        List<Cancelable> cancelables;
+        synchronized (this) {
+            cancelables = new ArrayList<>(mCancelMap.values());
+        }
+        for (Cancelable cancelable : cancelables) {
+            cancelable.cancel();
         }
     }
 
-    public int size() {
+    public synchronized int size() {
         return mCancelMap.size();
     }
-}
\ No newline at end of file
+
+    private void unIndex(BasicRequest<?> request) {
+        Object sign = mRequestSigns.remove(request);
+        for (Object key : indexKeys(sign)) {
+            Set<BasicRequest<?>> requests = mSignMap.get(key);
+            if (requests == null) continue;
+            requests.remove(request);
+            if (requests.isEmpty()) mSignMap.remove(key);
+        }
+    }
+
+    /**
+     * The sign, and the parents if the sign is a {@link CancelGroup}.
+     */
+    private static List<Object> indexKeys(Object sign) {
+        List<Object> keys = new ArrayList<>(1);
+        keys.add(sign);
+        if (sign instanceof CancelGroup) {
+            for (CancelGroup parent = ((CancelGroup)sign).getParent(); parent != null; parent = parent.getParent()) {
+                keys.add(parent);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The circuit breaker of each host. The circuit of a host opens when the failure rate of its recent requests reaches
+ * the threshold, then the requests of the host fail immediately with {@code CircuitOpenError} rather than waiting
+ * for the timeout and holding a thread of the queue.
+ * </p>
+ * After the cool-down, one request of the host is let through as a probe, the circuit closes if it succeeds, or
+ * opens for another cool-down if it fails.
+ *
+ * @see InitializationConfig.Builder#circuitBreaker(CircuitBreaker)
+ */
+public class CircuitBreaker {
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    /**
+     * The max number of the hosts to remember, the least recently used one is forgotten beyond it.
+     */
+    private static final int MAX_HOSTS = 64;
+
+    private final float mFailureRate;
+    private final int mWindowSize;
+    private final long mCoolDown;
+    private final Map<String, Circuit> mCircuits = new LinkedHashMap<String, Circuit>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Circuit> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    /**
+     * The circuit opens when half of the last 20 requests failed, and cools down for 30 seconds.
+     */
+    public CircuitBreaker() {
+        this(0.5F, 20, 30 * 1000);
+    }
+
+    /**
+     * @param failureRate the failure rate that opens the circuit, such as 0.5.
+     * @param windowSize  the number of the recent requests of each host to count, the circuit does not open until
+     *                    there are so many requests.
+     * @param coolDown    the time the circuit stays open before a probe in milliseconds.
+     */
+    public CircuitBreaker(float failureRate, int windowSize, long coolDown) {
+        if (failureRate <= 0 || failureRate > 1)
+            throw new IllegalArgumentException("The failureRate must be greater than 0 and not greater than 1.");
+        if (windowSize <= 0) throw new IllegalArgumentException("The windowSize must be greater than 0.");
+        if (coolDown < 0) throw new IllegalArgumentException("The coolDown can not be less than 0.");
+        this.mFailureRate = failureRate;
+        this.mWindowSize = windowSize;
+        this.mCoolDown = coolDown;
+    }
+
+    /**
+     * Whether a request of the host can be sent, the request must be reported by {@link #onSuccess(String)},
+     * {@link #onFailure(String)} or {@link #onIgnored(String)} if it is allowed.
+     */
+    public synchronized boolean allowRequest(String host) {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null) return true;
+        switch (circuit.state) {
+            case OPEN: {
+                if (SystemClock.elapsedRealtime() - circuit.openTime < mCoolDown) return false;
+                circuit.state = HALF_OPEN;
+                Logger.i("The circuit of " + host + " is half-open, send a probe.");
+                return true;
+            }
+            case HALF_OPEN: {
+                // Only the probe is let through.
+                return false;
+            }
+            default: {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * An allowed request of the host succeeded.
+     */
+    public synchronized void onSuccess(String host) {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null) {
+            circuit = new Circuit(mWindowSize);
+            mCircuits.put(host, circuit);
+        }
+        if (circuit.state == HALF_OPEN) {
+            Logger.i("The circuit of " + host + " is closed.");
+            circuit.reset();
+        } else if (circuit.state == CLOSED) {
+            circuit.record(false);
+        }
+    }
+
+    /**
+     * An allowed request of the host failed because of the network or the server.
+     */
+    public synchronized void onFailure(String host) {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null) {
+            circuit = new Circuit(mWindowSize);
+            mCircuits.put(host, circuit);
+        }
+        if (circuit.state == HALF_OPEN) {
+            open(host, circuit);
+        } else if (circuit.state == CLOSED) {
+            circuit.record(true);
+            if (circuit.count >= mWindowSize && circuit.failures >= mFailureRate * circuit.count) open(host, circuit);
+        }
+    }
+
+    /**
+     * An allowed request of the host ended without telling anything about the host, such as it is canceled.
+     */
+    public synchronized void onIgnored(String host) {
+        Circuit circuit = mCircuits.get(host);
+        // Let the next request be the probe.
+        if (circuit != null && circuit.state == HALF_OPEN) {
+            circuit.state = OPEN;
+            circuit.openTime = 0;
+        }
+    }
+
+    /**
+     * Whether the circuit of the host is open, the requests of the host fail immediately.
+     */
+    public synchronized boolean isOpen(String host) {
+        Circuit circuit = mCircuits.get(host);
+        return circuit != null && circuit.state != CLOSED;
+    }
+
+    private void open(String host, Circuit circuit) {
+        Logger.w("The circuit of " + host + " is open, the requests fail in " + mCoolDown + "ms.");
+        circuit.state = OPEN;
+        circuit.openTime = SystemClock.elapsedRealtime();
+    }
+
+    private static class Circuit {
+
+        private final boolean[] outcomes;
+        private int next;
+        private int count;
+        private int failures;
+        private int state = CLOSED;
+        private long openTime;
+
+        private Circuit(int windowSize) {
+            this.outcomes = new boolean[windowSize];
+        }
+
+        private void record(boolean isFailure) {
+            if (count == outcomes.length) {
+                if (outcomes[next]) failures--;
+            } else {
+                count++;
+            }
+            outcomes[next] = isFailure;
+            if (isFailure) failures++;
+            next = (next + 1) % outcomes.length;
+        }
+
+        private void reset() {
+            next = 0;
+            count = 0;
+            failures = 0;
+            state = CLOSED;
+            openTime = 0;
+        }
+    }
+}
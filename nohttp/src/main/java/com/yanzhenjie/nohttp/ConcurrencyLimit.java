@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+/**
+ * <p>
+ * The adaptive limit of the number of works being executed by a {@link WorkQueue}, it is resized by the latency and
+ * the result of each work executed through the network.
+ * </p>
+ * The methods are called with the lock of the queue held, so the implementation does not need to be thread-safe,
+ * but it can only be set to one queue.
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * Get the current limit, it should not be less than 1.
+     */
+    int getLimit();
+
+    /**
+     * A work executed through the network is finished.
+     *
+     * @param rtt       the time the work took in milliseconds.
+     * @param inFlight  the number of works being executed when the work was finished, including itself.
+     * @param isDropped the work failed because of a timeout or the server is overloaded, it is a sign of congestion.
+     */
+    void onSample(long rtt, int inFlight, boolean isDropped);
+
+    /**
+     * <p>
+     * Additive increase and multiplicative decrease, the limit grows by 1 when a work succeeds with the limit used up,
+     * and is cut by {@link #BACKOFF_RATIO} when a work is dropped.
+     * </p>
+     * It only reacts to the failures, so it suits the networks whose latency is unsteady.
+     */
+    class AIMD
+      implements ConcurrencyLimit {
+
+        private static final double BACKOFF_RATIO = 0.9;
+
+        private final int mMin;
+        private final int mMax;
+        private double mLimit;
+
+        /**
+         * @param min the minimum limit, it is also the initial limit.
+         * @param max the maximum limit.
+         */
+        public AIMD(int min, int max) {
+            this(min, max, min);
+        }
+
+        /**
+         * @param min     the minimum limit.
+         * @param max     the maximum limit.
+         * @param initial the initial limit.
+         */
+        public AIMD(int min, int max, int initial) {
+            if (min <= 0 || min > max)
+                throw new IllegalArgumentException("The min must be greater than 0 and not greater than the max.");
+            if (initial < min || initial > max)
+                throw new IllegalArgumentException("The initial must be between the min and the max.");
+            this.mMin = min;
+            this.mMax = max;
+            this.mLimit = initial;
+        }
+
+        @Override
+        public int getLimit() {
+            return (int)mLimit;
+        }
+
+        @Override
+        public void onSample(long rtt, int inFlight, boolean isDropped) {
+            if (isDropped) {
+                mLimit = Math.max(mMin, Math.floor(mLimit * BACKOFF_RATIO));
+            } else if (inFlight >= (int)mLimit) {
+                mLimit = Math.min(mMax, mLimit + 1);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Follow the gradient of the latency like TCP Vegas, the limit shrinks when the latency rises above the lowest
+     * latency seen recently, that is to say, the requests begin to queue somewhere in the network, and grows by about
+     * the square root of the limit while the latency stays low.
+     * </p>
+     * The lowest latency is forgotten every {@link #PROBE_INTERVAL} samples, so the limit follows the change of the
+     * network, such as switching from Wi-Fi to a cellular network.
+     */
+    class Gradient
+      implements ConcurrencyLimit {
+
+        private static final int PROBE_INTERVAL = 500;
+        private static final double SMOOTHING = 0.2;
+        private static final double MIN_GRADIENT = 0.5;
+        private static final double BACKOFF_RATIO = 0.9;
+
+        private final int mMin;
+        private final int mMax;
+        private double mLimit;
+        private long mMinRtt = Long.MAX_VALUE;
+        private int mSamples;
+
+        /**
+         * @param min the minimum limit, it is also the initial limit.
+         * @param max the maximum limit.
+         */
+        public Gradient(int min, int max) {
+            this(min, max, min);
+        }
+
+        /**
+         * @param min     the minimum limit.
+         * @param max     the maximum limit.
+         * @param initial the initial limit.
+         */
+        public Gradient(int min, int max, int initial) {
+            if (min <= 0 || min > max)
+                throw new IllegalArgumentException("The min must be greater than 0 and not greater than the max.");
+            if (initial < min || initial > max)
+                throw new IllegalArgumentException("The initial must be between the min and the max.");
+            this.mMin = min;
+            this.mMax = max;
+            this.mLimit = initial;
+        }
+
+        @Override
+        public int getLimit() {
+            return (int)mLimit;
+        }
+
+        @Override
+        public void onSample(long rtt, int inFlight, boolean isDropped) {
+            rtt = Math.max(1, rtt);
+            if (++mSamples >= PROBE_INTERVAL) {
+                mSamples = 0;
+                mMinRtt = Long.MAX_VALUE;
+            }
+
+            double newLimit;
+            if (isDropped) {
+                newLimit = mLimit * BACKOFF_RATIO;
+            } else {
+                if (rtt < mMinRtt) mMinRtt = rtt;
+                double gradient = Math.max(MIN_GRADIENT, Math.min(1, (double)mMinRtt / rtt));
+                newLimit = mLimit * gradient + Math.sqrt(mLimit);
+                // The limit was not used up, the latency tells nothing about a higher limit.
+                if (inFlight < mLimit / 2) newLimit = Math.min(mLimit, newLimit);
+            }
+            newLimit = mLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+            mLimit = Math.max(mMin, Math.min(mMax, newLimit));
+        }
+    }
+}
@@ -89,8 +89,9 @@ public class Connection implements Closeable {
 
     @Override
     public void close() throws IOException {
-        IOUtils.closeQuietly(mServerStream);
+        // The network may read the rest of the response to reuse the connection.
         IOUtils.closeQuietly(network);
+        IOUtils.closeQuietly(mServerStream);
     }
 
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * <p>The response body of a handle with deadline, reading fails when the deadline expires.</p>
+ */
+class DeadlineInputStream
+  extends FilterInputStream {
+
+    private final BasicRequest<?> mRequest;
+
+    DeadlineInputStream(InputStream in, BasicRequest<?> request) {
+        super(in);
+        this.mRequest = request;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkDeadline();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        checkDeadline();
+        return super.read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        checkDeadline();
+        return super.skip(count);
+    }
+
+    private void checkDeadline() throws SocketTimeoutException {
+        if (mRequest.isExpired())
+            throw new SocketTimeoutException("The deadline of the request expired: " + mRequest.url() + ".");
+    }
+}
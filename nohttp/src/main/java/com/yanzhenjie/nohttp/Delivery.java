@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+/**
+ * <p>Deliver the callbacks of the requests to the thread where they are executed.</p>
+ *
+ * @see HandlerDelivery
+ * @see FrameDelivery
+ * @see DirectDelivery
+ * @see ExecutorDelivery
+ */
+public interface Delivery {
+
+    /**
+     * Deliver a callback, the callbacks posted by the same thread must be executed in order.
+     *
+     * @param r the callback.
+     * @return true if the callback is successfully delivered, otherwise false.
+     */
+    boolean post(Runnable r);
+
+}
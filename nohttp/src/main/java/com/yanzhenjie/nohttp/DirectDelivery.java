@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+/**
+ * <p>
+ * Execute the callbacks directly on the thread of the request, such as the dispatcher of the queue.
+ * </p>
+ * It is suitable for the requests without UI, the callbacks should be short, or they block the next request.
+ */
+public final class DirectDelivery
+  implements Delivery {
+
+    private static DirectDelivery instance;
+
+    public static DirectDelivery getInstance() {
+        if (instance == null)
+            synchronized (DirectDelivery.class) {
+                if (instance == null)
+                    instance = new DirectDelivery();
+            }
+        return instance;
+    }
+
+    private DirectDelivery() {
+    }
+
+    @Override
+    public boolean post(Runnable r) {
+        r.run();
+        return true;
+    }
+}
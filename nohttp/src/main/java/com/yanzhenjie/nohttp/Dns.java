@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Resolve the addresses of a host.</p>
+ * The addresses are tried in order when connecting, see {@link CachedDns} for the cache, prefetch and the static
+ * hosts.
+ *
+ * @see InitializationConfig.Builder#dns(Dns)
+ */
+public interface Dns {
+
+    /**
+     * Resolve the host by {@link InetAddress#getAllByName(String)}, it blocks until the system resolver returns.
+     */
+    Dns SYSTEM = new Dns() {
+        @Override
+        public List<InetAddress> lookup(String host) throws UnknownHostException {
+            if (host == null) throw new UnknownHostException("The host is null.");
+            return Arrays.asList(InetAddress.getAllByName(host));
+        }
+    };
+
+    /**
+     * Resolve the host.
+     *
+     * @param host the host name or literal address.
+     * @return the addresses of the host, not empty.
+     * @throws UnknownHostException the host can not be resolved.
+     */
+    List<InetAddress> lookup(String host) throws UnknownHostException;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>
+ * Execute the callbacks on an {@link Executor}, such as a thread pool of the service.
+ * </p>
+ * The callbacks are executed one by one in the order they are posted, even the executor has multiple threads,
+ * so the callbacks of a request never run out of order.
+ */
+public class ExecutorDelivery
+  implements Delivery {
+
+    private final Executor mExecutor;
+
+    private final ArrayDeque<Runnable> mPending = new ArrayDeque<>();
+    private boolean isRunning;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public ExecutorDelivery(Executor executor) {
+        if (executor == null) throw new IllegalArgumentException("The executor can not be null.");
+        this.mExecutor = executor;
+    }
+
+    @Override
+    public boolean post(Runnable r) {
+        synchronized (mPending) {
+            mPending.offer(r);
+            if (isRunning) return true;
+            isRunning = true;
+        }
+        try {
+            mExecutor.execute(mDrain);
+            return true;
+        } catch (RejectedExecutionException e) {
+            synchronized (mPending) {
+                mPending.clear();
+                isRunning = false;
+            }
+            Logger.e(e, "The executor rejects the callback.");
+            return false;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable runnable;
+            synchronized (mPending) {
+                runnable = mPending.poll();
+                if (runnable == null) {
+                    isRunning = false;
+                    return;
+                }
+            }
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                Logger.e(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Deliver the callbacks to the main thread in batches, the callbacks posted in a frame are executed together by one
+ * message of the main looper at the next frame, in the order they are posted.
+ * </p>
+ * The frame comes from {@link Choreographer} on Jelly Bean and above, otherwise a fixed interval of 16 milliseconds.
+ */
+public final class FrameDelivery
+  implements Delivery {
+
+    private static final long FRAME_INTERVAL = 16;
+
+    private static FrameDelivery instance;
+
+    public static FrameDelivery getInstance() {
+        if (instance == null)
+            synchronized (FrameDelivery.class) {
+                if (instance == null)
+                    instance = new FrameDelivery(new Handler(Looper.getMainLooper()));
+            }
+        return instance;
+    }
+
+    private final Handler mHandler;
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    /**
+     * It can only be created on the main thread, so it is created at the first draining.
+     */
+    private volatile FrameScheduler mFrameScheduler;
+
+    private final Object mLock = new Object();
+    private List<Runnable> mPending = new ArrayList<>();
+    private List<Runnable> mDraining = new ArrayList<>();
+    private boolean isScheduled;
+
+    private FrameDelivery(Handler handler) {
+        this.mHandler = handler;
+    }
+
+    @Override
+    public boolean post(Runnable r) {
+        synchronized (mLock) {
+            mPending.add(r);
+            if (isScheduled) return true;
+            isScheduled = true;
+        }
+
+        FrameScheduler scheduler = mFrameScheduler;
+        if (scheduler != null) {
+            scheduler.schedule();
+            return true;
+        }
+        return mHandler.postDelayed(mDrain, FRAME_INTERVAL);
+    }
+
+    private void drain() {
+        if (mFrameScheduler == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            mFrameScheduler = new FrameScheduler(mDrain);
+
+        List<Runnable> runnables;
+        synchronized (mLock) {
+            runnables = mPending;
+            mPending = mDraining;
+            mDraining = runnables;
+            isScheduled = false;
+        }
+
+        try {
+            for (Runnable runnable : runnables) {
+                runnable.run();
+            }
+        } finally {
+            runnables.clear();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameScheduler
+      implements Choreographer.FrameCallback {
+
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+        private final Runnable mDrain;
+
+        private FrameScheduler(Runnable drain) {
+            this.mDrain = drain;
+        }
+
+        private void schedule() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mDrain.run();
+        }
+    }
+}
@@ -19,12 +19,13 @@ import android.os.Handler;
 import android.os.Looper;
 
 /**
- * <p>Poster.</p>
+ * <p>Poster, deliver the callbacks to the main thread.</p>
  * Created on 2016/6/7.
  *
  * @author Yan Zhenjie.
  */
-public final class HandlerDelivery {
+public final class HandlerDelivery
+  implements Delivery {
 
     private static HandlerDelivery instance;
 
@@ -43,6 +44,7 @@ public final class HandlerDelivery {
         this.mHandler = handler;
     }
 
+    @Override
     public boolean post(Runnable r) {
         return mHandler.post(r);
     }
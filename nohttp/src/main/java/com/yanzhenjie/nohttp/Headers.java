@@ -55,6 +55,12 @@ public class Headers extends BasicMultiValueMap<String, String> {
      */
     public static final String HEAD_KEY_RESPONSE_CODE = "ResponseCode";
 
+    /**
+     * The value is {@value}, the protocol negotiated with the server, such as {@code h2}, it is only set by the
+     * {@link NetworkExecutor} that knows the protocol.
+     */
+    public static final String HEAD_KEY_RESPONSE_PROTOCOL = "ResponseProtocol";
+
     /**
      * The value is {@value}.
      */
@@ -514,6 +520,15 @@ public class Headers extends BasicMultiValueMap<String, String> {
         }
     }
 
+    /**
+     * {@value #HEAD_KEY_RESPONSE_PROTOCOL}.
+     *
+     * @return the protocol such as {@code http/1.1} or {@code h2}, null if it is unknown.
+     */
+    public String getResponseProtocol() {
+        return getFirstValue(HEAD_KEY_RESPONSE_PROTOCOL);
+    }
+
     /**
      * <p>
      * Returns the date value in milliseconds since 1970.1.1, 00:00h corresponding to the header field field. The
@@ -18,6 +18,7 @@ package com.yanzhenjie.nohttp;
 import android.text.TextUtils;
 import android.webkit.URLUtil;
 
+import com.yanzhenjie.nohttp.error.CircuitOpenError;
 import com.yanzhenjie.nohttp.error.NetworkError;
 import com.yanzhenjie.nohttp.error.TimeoutError;
 import com.yanzhenjie.nohttp.error.URLError;
@@ -67,14 +68,36 @@ public class HttpConnection {
 
         Network network = null;
         String url = request.url();
+        request.startDeadline();
         try {
+            if (request.isExpired())
+                throw new TimeoutError("The deadline of the request expired: " + url + ".");
             if (!NetUtils.isNetworkAvailable())
                 throw new NetworkError("The network is not available, please check the network. The requested url is:" + url);
 
-            // MalformedURLException, IOException, ProtocolException, UnknownHostException, SocketTimeoutException
-            network = createConnectionAndWriteData(request);
+            CircuitBreaker breaker = NoHttp.getInitializeConfig().getCircuitBreaker();
+            String host = WorkQueue.parseHost(url);
+            if (breaker != null && !breaker.allowRequest(host))
+                throw new CircuitOpenError("The host keeps failing, the request fails without being sent: " + url + ".");
+
+            try {
+                // MalformedURLException, IOException, ProtocolException, UnknownHostException, SocketTimeoutException
+                network = createConnectionAndWriteData(request);
+            } catch (Exception e) {
+                if (breaker != null) {
+                    boolean isHostFailure = e instanceof IOException || e instanceof TimeoutError;
+                    if (isHostFailure && !request.isCancelled() && !request.isAborted()) breaker.onFailure(host);
+                    else breaker.onIgnored(host);
+                }
+                throw e;
+            }
             Logger.d("-------Response start-------");
             int responseCode = network.getResponseCode();
+            NoHttp.getInitializeConfig().getPreconnector().record(url);
+            if (breaker != null) {
+                if (isServerFailure(responseCode)) breaker.onFailure(host);
+                else breaker.onSuccess(host);
+            }
             responseHeaders = parseResponseHeaders(new URI(request.url()), responseCode, network.getResponseHeaders());
 
             // handle body
@@ -85,6 +108,8 @@ public class HttpConnection {
                 exception = redirectConnection.exception();
             } else if (hasResponseBody(request.getRequestMethod(), responseCode)) {
                 inputStream = network.getServerStream(responseCode, responseHeaders);
+                if (inputStream != null && request.getRemainingTime() != Long.MAX_VALUE)
+                    inputStream = new DeadlineInputStream(inputStream, request);
             }
             Logger.d("-------Response end-------");
         } catch (MalformedURLException e) {
@@ -104,32 +129,61 @@ public class HttpConnection {
     }
 
     /**
-     * Handle retries, and complete the handle network here.
+     * Handle retries, and complete the handle network here, the failures until the response headers are read are
+     * retried by the {@link RetryPolicy} of the request.
      *
      * @param request {@link BasicRequest}.
-     * @return {@link Network}.
+     * @return {@link Network} whose response headers have been read.
      * @throws Exception {@link #createNetwork(BasicRequest)}.
      */
     private Network createConnectionAndWriteData(BasicRequest<?> request) throws Exception {
-        Network network = null;
-        Exception exception = null;
-        int retryCount = request.getRetryCount() + 1;
-        boolean failed = true;
-        for (; failed && retryCount > 0; retryCount--) {
-            try {
-                network = createNetwork(request);
-                exception = null;
-                failed = false;
-            } catch (Exception e) {
-                exception = e;
+        RetryPolicy policy = request.getRetryPolicy();
+        policy.onExecute(request);
+        try {
+            for (int retryCount = 1; ; retryCount++) {
+                Network network = null;
+                try {
+                    network = createNetwork(request);
+                    if (request.getRequestMethod().allowRequestBody()) {
+                        // The executor such as the NioNetworkExecutor has written the body.
+                        OutputStream outputStream = network.getOutputStream();
+                        if (outputStream != null)
+                            writeRequestBody(request, outputStream);
+                    }
+                    network.getResponseCode();
+                    return network;
+                } catch (Exception e) {
+                    IOUtils.closeQuietly(network);
+                    long delay = getRetryDelay(request, retryCount, e);
+                    if (delay < 0) {
+                        // The retries stop at the deadline.
+                        if (request.isExpired())
+                            throw new TimeoutError("The deadline of the request expired: " + request.url() + ".");
+                        throw e;
+                    }
+                    Logger.w(e, "Retry the request after " + delay + "ms: " + request.url() + ".");
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
             }
+        } finally {
+            request.closeRequestBody();
         }
-        if (failed) {
-            throw exception;
-        } else if (request.getRequestMethod().allowRequestBody()) {
-            writeRequestBody(request, network.getOutputStream());
-        }
-        return network;
+    }
+
+    private static long getRetryDelay(BasicRequest<?> request, int retryCount, Exception e) {
+        if (retryCount > request.getRetryCount() || request.isCancelled() || request.isAborted() || request.isExpired())
+            return -1;
+        // The executor may have consumed the body before the failure.
+        if (request.getRequestMethod().allowRequestBody() && !request.isReplayable()) return -1;
+
+        long delay = request.getRetryPolicy().getRetryDelay(request, retryCount, e);
+        if (delay >= request.getRemainingTime()) return -1;
+        return delay;
     }
 
     /**
@@ -164,7 +218,10 @@ public class HttpConnection {
 
         // Cookie.
         headers.addCookie(new URI(url), NoHttp.getInitializeConfig().getCookieManager());
-        return mExecutor.execute(request);
+        if (request.isAborted()) throw new IOException("The request is aborted: " + url + ".");
+        Network network = mExecutor.execute(request);
+        request.setNetwork(network);
+        return network;
     }
 
     /**
@@ -221,6 +278,9 @@ public class HttpConnection {
             redirectRequest.setParamsEncoding(oldRequest.getParamsEncoding());
             redirectRequest.setProxy(oldRequest.getProxy());
         }
+        // The redirects share the deadline of the original request.
+        if (redirectRequest.getDeadlineTime() == 0)
+            redirectRequest.setDeadlineTime(oldRequest.getDeadlineTime());
         return getConnection(redirectRequest);
     }
 
@@ -261,6 +321,13 @@ public class HttpConnection {
         return headers;
     }
 
+    /**
+     * The server is down or overloaded, rather than the request is wrong.
+     */
+    private static boolean isServerFailure(int responseCode) {
+        return responseCode == 500 || responseCode == 502 || responseCode == 503 || responseCode == 504;
+    }
+
     ////////// Read response body //////////
 
     /**
@@ -30,6 +30,8 @@ import com.yanzhenjie.nohttp.tools.MultiValueMap;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.CookieStore;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSocketFactory;
@@ -50,8 +52,13 @@ public final class InitializationConfig {
     private int mReadTimeout;
 
     private int mRetryCount;
+    private RetryPolicy mRetryPolicy;
+    private CircuitBreaker mCircuitBreaker;
     private SSLSocketFactory mSSLSocketFactory;
     private HostnameVerifier mHostnameVerifier;
+    private Dns mDns;
+    private int mMaxIdleConnections;
+    private long mKeepAliveDuration;
 
     private MultiValueMap<String, String> mHeaders;
     private MultiValueMap<String, String> mParams;
@@ -64,6 +71,10 @@ public final class InitializationConfig {
 
     private Interceptor mInterceptor;
 
+    private Delivery mDelivery;
+
+    private Preconnector mPreconnector;
+
     private InitializationConfig(Builder builder) {
         this.mContext = builder.mContext;
 
@@ -71,6 +82,10 @@ public final class InitializationConfig {
         this.mReadTimeout = builder.mReadTimeout;
 
         this.mRetryCount = builder.mRetryCount;
+        this.mRetryPolicy = builder.mRetryPolicy;
+        if (this.mRetryPolicy == null)
+            this.mRetryPolicy = new RetryPolicy.Backoff();
+        this.mCircuitBreaker = builder.mCircuitBreaker;
         this.mSSLSocketFactory = builder.mSSLSocketFactory;
         if (this.mSSLSocketFactory == null)
             this.mSSLSocketFactory = SSLUtils.defaultSSLSocketFactory();
@@ -79,6 +94,12 @@ public final class InitializationConfig {
         if (this.mHostnameVerifier == null)
             this.mHostnameVerifier = SSLUtils.defaultHostnameVerifier();
 
+        this.mDns = builder.mDns;
+        if (this.mDns == null)
+            this.mDns = new CachedDns();
+        this.mMaxIdleConnections = builder.mMaxIdleConnections;
+        this.mKeepAliveDuration = builder.mKeepAliveDuration;
+
         this.mHeaders = builder.mHeaders;
         this.mParams = builder.mParams;
 
@@ -96,6 +117,12 @@ public final class InitializationConfig {
             this.mNetworkExecutor = new URLConnectionNetworkExecutor();
 
         this.mInterceptor = builder.mInterceptor;
+
+        this.mDelivery = builder.mDelivery;
+        if (this.mDelivery == null)
+            this.mDelivery = HandlerDelivery.getInstance();
+
+        this.mPreconnector = new Preconnector(mContext, builder.mPreconnects, builder.isRememberHosts);
     }
 
     public Context getContext() {
@@ -114,10 +141,30 @@ public final class InitializationConfig {
         return mRetryCount;
     }
 
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
     public SSLSocketFactory getSSLSocketFactory() {
         return mSSLSocketFactory;
     }
 
+    public Dns getDns() {
+        return mDns;
+    }
+
+    public int getMaxIdleConnections() {
+        return mMaxIdleConnections;
+    }
+
+    public long getKeepAliveDuration() {
+        return mKeepAliveDuration;
+    }
+
     public HostnameVerifier getHostnameVerifier() {
         return mHostnameVerifier;
     }
@@ -150,6 +197,14 @@ public final class InitializationConfig {
         return mInterceptor;
     }
 
+    public Delivery getDelivery() {
+        return mDelivery;
+    }
+
+    Preconnector getPreconnector() {
+        return mPreconnector;
+    }
+
     public final static class Builder {
 
         private Context mContext;
@@ -158,8 +213,13 @@ public final class InitializationConfig {
         private int mReadTimeout = 10 * 1000;
 
         private int mRetryCount;
+        private RetryPolicy mRetryPolicy;
+        private CircuitBreaker mCircuitBreaker;
         private SSLSocketFactory mSSLSocketFactory;
         private HostnameVerifier mHostnameVerifier;
+        private Dns mDns;
+        private int mMaxIdleConnections;
+        private long mKeepAliveDuration;
 
         private MultiValueMap<String, String> mHeaders = new LinkedMultiValueMap<>();
         private MultiValueMap<String, String> mParams = new LinkedMultiValueMap<>();
@@ -171,6 +231,11 @@ public final class InitializationConfig {
 
         private Interceptor mInterceptor;
 
+        private Delivery mDelivery;
+
+        private Map<String, Integer> mPreconnects = new LinkedHashMap<>();
+        private boolean isRememberHosts;
+
         private Builder(Context context) {
             this.mContext = context.getApplicationContext();
         }
@@ -203,6 +268,27 @@ public final class InitializationConfig {
             return this;
         }
 
+        /**
+         * The policy that decides whether and when to retry, it is shared by all the requests.
+         *
+         * @param policy the default value is {@link RetryPolicy.Backoff}.
+         */
+        public Builder retryPolicy(RetryPolicy policy) {
+            this.mRetryPolicy = policy;
+            return this;
+        }
+
+        /**
+         * The circuit breaker of each host, the requests of a failing host fail immediately.
+         *
+         * @param breaker the default value is null, that is to say, the requests are always sent.
+         * @see CircuitBreaker
+         */
+        public Builder circuitBreaker(CircuitBreaker breaker) {
+            this.mCircuitBreaker = breaker;
+            return this;
+        }
+
         /**
          * Global SSLSocketFactory.
          *
@@ -222,6 +308,36 @@ public final class InitializationConfig {
             return this;
         }
 
+        /**
+         * Resolve the hosts of the requests, the NIO and OkHttp executors connect to the addresses in order and fall
+         * back to the next address if a connect fails.
+         *
+         * @param dns the default value is a {@link CachedDns} of the system resolver.
+         * @see CachedDns
+         */
+        public Builder dns(Dns dns) {
+            this.mDns = dns;
+            return this;
+        }
+
+        /**
+         * Configure the keep-alive pool of the platform shared by all {@link java.net.HttpURLConnection} of the
+         * process when NoHttp is initialized, it is left untouched by default.
+         *
+         * @param maxIdleConnections the max number of idle connections kept in the pool.
+         * @param keepAliveDuration  the time an idle connection is kept in milliseconds.
+         * @see URLConnectionNetworkExecutor#URLConnectionNetworkExecutor(boolean)
+         */
+        public Builder keepAlive(int maxIdleConnections, long keepAliveDuration) {
+            if (maxIdleConnections <= 0)
+                throw new IllegalArgumentException("The maxIdleConnections must be greater than 0.");
+            if (keepAliveDuration <= 0)
+                throw new IllegalArgumentException("The keepAliveDuration must be greater than 0.");
+            this.mMaxIdleConnections = maxIdleConnections;
+            this.mKeepAliveDuration = keepAliveDuration;
+            return this;
+        }
+
         /**
          * Add the global handle header.
          */
@@ -263,6 +379,7 @@ public final class InitializationConfig {
          * Set the NetworkExecutor, such as: URLConnectionNetworkExecutor, OkHttpNetworkExecutor.
          *
          * @see URLConnectionNetworkExecutor
+         * @see com.yanzhenjie.nohttp.nio.NioNetworkExecutor
          */
         public Builder networkExecutor(NetworkExecutor executor) {
             this.mNetworkExecutor = executor;
@@ -274,6 +391,43 @@ public final class InitializationConfig {
             return this;
         }
 
+        /**
+         * Set the Delivery of the callbacks, the default is the main thread.
+         *
+         * @see HandlerDelivery
+         * @see FrameDelivery
+         * @see DirectDelivery
+         * @see ExecutorDelivery
+         */
+        public Builder delivery(Delivery delivery) {
+            this.mDelivery = delivery;
+            return this;
+        }
+
+        /**
+         * Open the connections to the host in the background when NoHttp is initialized.
+         *
+         * @param url   the url of the host, such as {@code https://api.example.com}.
+         * @param count the number of the connections.
+         * @see NoHttp#preconnect(String, int)
+         */
+        public Builder preconnect(String url, int count) {
+            if (count <= 0) throw new IllegalArgumentException("The count must be greater than 0.");
+            this.mPreconnects.put(url, count);
+            return this;
+        }
+
+        /**
+         * Remember the hosts of the requests, and open a connection to each of the recent hosts in the background
+         * when NoHttp is initialized next time.
+         *
+         * @param remember the default value is false.
+         */
+        public Builder rememberHosts(boolean remember) {
+            this.isRememberHosts = remember;
+            return this;
+        }
+
         public InitializationConfig build() {
             return new InitializationConfig(this);
         }
@@ -30,7 +30,7 @@ public interface Network extends Closeable {
     /**
      * Gets output stream for socket.
      *
-     * @return {@link OutputStream}.
+     * @return {@link OutputStream}, null if the request body has been written by the {@link NetworkExecutor}.
      * @throws IOException maybe.
      */
     OutputStream getOutputStream() throws IOException;
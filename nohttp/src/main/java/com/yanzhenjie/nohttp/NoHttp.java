@@ -63,6 +63,14 @@ public class NoHttp {
      */
     public static void initialize(InitializationConfig initializeConfig) {
         sInitializeConfig = initializeConfig;
+        int maxIdleConnections = initializeConfig.getMaxIdleConnections();
+        if (maxIdleConnections > 0) {
+            // The pool of the platform reads them when it is first used.
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", Integer.toString(maxIdleConnections));
+            System.setProperty("http.keepAliveDuration", Long.toString(initializeConfig.getKeepAliveDuration()));
+        }
+        initializeConfig.getPreconnector().warmUp();
     }
 
     /**
@@ -89,6 +97,20 @@ public class NoHttp {
         return sInitializeConfig;
     }
 
+    /**
+     * Open the connections to the host in the background, so the first requests to it do not wait for the dns, tcp
+     * and tls handshakes. The connections are kept in the pool if the {@link NetworkExecutor} is
+     * {@link Preconnectable}, otherwise the host is only resolved and shaken hands with.
+     *
+     * @param url   the url of the host, such as {@code https://api.example.com}, https is used without a scheme.
+     * @param count the number of the connections.
+     * @see InitializationConfig.Builder#preconnect(String, int)
+     */
+    public static void preconnect(String url, int count) {
+        testInitialize();
+        sInitializeConfig.getPreconnector().preconnect(url, count);
+    }
+
     /**
      * Create a queue of handle, the default thread pool size is 3.
      *
@@ -112,6 +134,21 @@ public class NoHttp {
         return requestQueue;
     }
 
+    /**
+     * Create a queue of handle whose concurrency is adapted to the network.
+     *
+     * @param threadPoolSize the maximum number of concurrent.
+     * @param limit          {@link ConcurrencyLimit}, such as {@link ConcurrencyLimit.AIMD}.
+     * @return returns the handle queue, the queue is used to control the entry of the handle.
+     * @see RequestQueue#setConcurrencyLimit(ConcurrencyLimit)
+     */
+    public static RequestQueue newRequestQueue(int threadPoolSize, ConcurrencyLimit limit) {
+        RequestQueue requestQueue = new RequestQueue(threadPoolSize);
+        requestQueue.setConcurrencyLimit(limit);
+        requestQueue.start();
+        return requestQueue;
+    }
+
     /**
      * Create a String type handle, the handle method is {@link RequestMethod#GET}.
      *
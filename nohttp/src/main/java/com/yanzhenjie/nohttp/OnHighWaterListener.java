@@ -0,0 +1,30 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+/**
+ * <p>Listen to the queue reaching the high-water mark.</p>
+ */
+public interface OnHighWaterListener {
+
+    /**
+     * The number of the requests waiting in the queue reaches the high-water mark, it is called on the thread adding
+     * the request, and is not called again until the number goes below the mark.
+     *
+     * @param size the number of the requests waiting in the queue.
+     */
+    void onHighWater(int size);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+/**
+ * <p>
+ * A {@link NetworkExecutor} that keeps the connections alive in a pool, it can open them before the requests.
+ * </p>
+ * The request to open a connection is a {@code HEAD} to the root of the host without the cookies, the executor may
+ * send it to get the connection into its pool.
+ *
+ * @see NoHttp#preconnect(String, int)
+ */
+public interface Preconnectable {
+
+    /**
+     * Open a connection to the host of the request and put it into the pool, it blocks until the connection is
+     * pooled or fails.
+     *
+     * @param request the request to the root of the host, its ssl settings, proxy and timeouts are used.
+     * @return false if the executor does not keep the connections.
+     */
+    boolean preconnect(BasicRequest<?> request) throws Exception;
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * <p>
+ * Open the connections to the hosts in the background, so the first requests to them do not wait for the dns, tcp
+ * and tls handshakes.
+ * </p>
+ * <p>
+ * The connections are opened by the {@link NetworkExecutor} of the config if it is {@link Preconnectable}, and kept
+ * in its pool. The executors that open them by a request, such as the {@link URLConnectionNetworkExecutor} with
+ * keep-alive, open a new connection only when no idle one is in the pool, so the connections to a host are opened
+ * at the same time, at most {@value #MAX_THREADS} of them.
+ * </p>
+ * Otherwise the host is resolved by the {@link Dns} of the config, and a bare socket is connected to it, with a tls
+ * handshake by the {@link javax.net.ssl.SSLSocketFactory} of the config for https. The socket is closed then, what is
+ * kept is the resolved addresses, and the tls session which is resumed only by the requests using the same
+ * {@link javax.net.ssl.SSLSocketFactory}.
+ */
+class Preconnector {
+
+    private static final String PREFERENCES_NAME = "nohttp_preconnect";
+    private static final String KEY_HOSTS = "hosts";
+
+    /**
+     * The max number of the remembered hosts.
+     */
+    private static final int MAX_HOSTS = 8;
+
+    /**
+     * The max number of the connections opened at the same time.
+     */
+    private static final int MAX_THREADS = 5;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "NoHttp Preconnect #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final Executor EXECUTOR = newExecutor();
+
+    private static Executor newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final Context mContext;
+    private final Map<String, Integer> mWarmUpHosts;
+    private final boolean isRememberHosts;
+    private final Map<String, Boolean> mHosts = new LinkedHashMap<String, Boolean>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+    private boolean isLoaded;
+    private boolean isSaving;
+
+    /**
+     * @param warmUpHosts     the urls of the hosts to connect at the start, and the number of the connections.
+     * @param isRememberHosts whether to remember the hosts of the requests, and connect them at the next start.
+     */
+    Preconnector(Context context, Map<String, Integer> warmUpHosts, boolean isRememberHosts) {
+        this.mContext = context;
+        this.mWarmUpHosts = new LinkedHashMap<>(warmUpHosts);
+        this.isRememberHosts = isRememberHosts;
+    }
+
+    /**
+     * Connect the hosts given at the start, and a connection to each of the hosts remembered in the previous
+     * sessions.
+     */
+    void warmUp() {
+        if (mWarmUpHosts.isEmpty() && !isRememberHosts) return;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Map<String, Integer> hosts = new LinkedHashMap<>();
+                for (Map.Entry<String, Integer> entry : mWarmUpHosts.entrySet()) {
+                    String origin = parseOrigin(entry.getKey());
+                    if (origin != null) hosts.put(origin, entry.getValue());
+                    else Logger.w("The url can not be preconnected: " + entry.getKey() + ".");
+                }
+                if (isRememberHosts) {
+                    for (String host : loadHosts()) {
+                        if (!hosts.containsKey(host)) hosts.put(host, 1);
+                    }
+                }
+                for (Map.Entry<String, Integer> entry : hosts.entrySet()) {
+                    connect(entry.getKey(), entry.getValue());
+                }
+            }
+        });
+    }
+
+    /**
+     * Open the connections to the host in the background.
+     *
+     * @param url   the url of the host, such as {@code https://api.example.com}, https is used without a scheme.
+     * @param count the number of the connections.
+     */
+    void preconnect(String url, int count) {
+        if (count <= 0) throw new IllegalArgumentException("The count must be greater than 0.");
+        String origin = parseOrigin(url);
+        if (origin == null) throw new IllegalArgumentException("The url can not be preconnected: " + url + ".");
+        connect(origin, count);
+    }
+
+    /**
+     * The request to the url got a response, remember its host for the next start. The hosts are saved in the
+     * background, the new hosts recorded before a save runs are saved together.
+     */
+    void record(String url) {
+        if (!isRememberHosts) return;
+        String origin = parseOrigin(url);
+        if (origin == null) return;
+
+        synchronized (mHosts) {
+            // Only a new host is saved, a used host is moved to the end in memory.
+            if (mHosts.put(origin, Boolean.TRUE) != null || isSaving) return;
+            isSaving = true;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    private void save() {
+        synchronized (mHosts) {
+            isSaving = false;
+        }
+        List<String> hosts = loadHosts();
+        SharedPreferences.Editor editor = preferences().edit();
+        editor.putString(KEY_HOSTS, TextUtils.join("\n", hosts));
+        editor.apply();
+    }
+
+    private List<String> loadHosts() {
+        synchronized (mHosts) {
+            if (!isLoaded) {
+                isLoaded = true;
+                String hosts = preferences().getString(KEY_HOSTS, null);
+                if (!TextUtils.isEmpty(hosts)) {
+                    // The hosts recorded before loading are newer.
+                    Map<String, Boolean> recent = new LinkedHashMap<>(mHosts);
+                    mHosts.clear();
+                    for (String host : hosts.split("\n")) {
+                        if (!TextUtils.isEmpty(host)) mHosts.put(host, Boolean.TRUE);
+                    }
+                    mHosts.putAll(recent);
+                }
+            }
+            return new ArrayList<>(mHosts.keySet());
+        }
+    }
+
+    private SharedPreferences preferences() {
+        return mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static void connect(final String origin, int count) {
+        NetworkExecutor executor = NoHttp.getInitializeConfig().getNetworkExecutor();
+        if (!(executor instanceof Preconnectable)) count = 1;
+        // Only one handshake is useful without a pool.
+        final AtomicBoolean isHandshaken = new AtomicBoolean();
+        for (int i = 0; i < count; i++) {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!open(origin)) {
+                            if (!isHandshaken.compareAndSet(false, true)) return;
+                            handshake(origin);
+                        }
+                        Logger.d("Preconnected " + origin + ".");
+                    } catch (Exception e) {
+                        Logger.w(e, "Failed to preconnect " + origin + ".");
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Open a connection into the pool of the executor.
+     *
+     * @return false if the executor does not keep the connections.
+     */
+    private static boolean open(String origin) throws Exception {
+        NetworkExecutor executor = NoHttp.getInitializeConfig().getNetworkExecutor();
+        if (!(executor instanceof Preconnectable)) return false;
+        // It is not sent through the HttpConnection, so no cookies, breaker or hosts record are involved.
+        BasicRequest<?> request = new BasicRequest(origin + "/", RequestMethod.HEAD);
+        request.removeAll();
+        request.setRetryCount(0);
+        return ((Preconnectable) executor).preconnect(request);
+    }
+
+    /**
+     * Connect to the addresses of the host in order until one succeeds, and shake hands for https.
+     */
+    private static void handshake(String origin) throws IOException {
+        InitializationConfig config = NoHttp.getInitializeConfig();
+        URL url = new URL(origin);
+        String host = url.getHost();
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        boolean isHttps = "https".equals(url.getProtocol());
+
+        IOException failure = null;
+        for (InetAddress address : config.getDns().lookup(host)) {
+            Socket socket = new Socket();
+            try {
+                socket.setSoTimeout(config.getReadTimeout());
+                socket.connect(new InetSocketAddress(address, port), config.getConnectTimeout());
+                if (isHttps) {
+                    // The ssl socket closes the bare socket with it.
+                    socket = config.getSSLSocketFactory().createSocket(socket, host, port, true);
+                    ((SSLSocket) socket).startHandshake();
+                }
+                return;
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                closeQuietly(socket);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Get the scheme, host and port of the url, null if it is not a http url.
+     */
+    private static String parseOrigin(String url) {
+        if (TextUtils.isEmpty(url)) return null;
+        if (!url.contains("://")) url = "https://" + url;
+        try {
+            URL u = new URL(url);
+            String protocol = u.getProtocol();
+            if (!"http".equals(protocol) && !"https".equals(protocol)) return null;
+            if (TextUtils.isEmpty(u.getHost())) return null;
+            return protocol + "://" + u.getHost() + (u.getPort() == -1 ? "" : ":" + u.getPort());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
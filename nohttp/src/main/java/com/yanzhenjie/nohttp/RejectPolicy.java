@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+/**
+ * <p>What the queue does when a request is added and the queue is full.</p>
+ */
+public enum RejectPolicy {
+
+    /**
+     * Reject the new request, it fails with {@link com.yanzhenjie.nohttp.error.QueueFullError}.
+     */
+    REJECT,
+
+    /**
+     * Drop the oldest request of the lowest priority in the queue, it fails with
+     * {@link com.yanzhenjie.nohttp.error.QueueFullError}. If the new request has the lowest priority, it is rejected.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Block the caller until the queue has space. The request added on the main thread is rejected instead.
+     */
+    BLOCK
+}
@@ -67,6 +67,19 @@ public enum RequestMethod {
         }
     }
 
+    /**
+     * Whether sending the request many times has the same effect as sending it once, so it can be retried safely.
+     */
+    public boolean isIdempotent() {
+        switch (this) {
+            case POST:
+            case PATCH:
+                return false;
+            default:
+                return true;
+        }
+    }
+
     public static RequestMethod reverse(String method) {
         if (TextUtils.isEmpty(method)) {
             method = "GET";
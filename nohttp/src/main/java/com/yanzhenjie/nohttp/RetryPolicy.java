@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.UnknownServiceException;
+import java.security.cert.CertificateException;
+import java.util.Random;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * <p>
+ * Decide whether and when a failed request is retried, the number of retries is limited by
+ * {@link BasicRequest#setRetryCount(int)}.
+ * </p>
+ * The failures until the response headers are read can be retried, the failures while reading the response body
+ * can not.
+ */
+public interface RetryPolicy {
+
+    /**
+     * The request is going to be executed, it is called once for each request, not for each retry.
+     */
+    void onExecute(BasicRequest<?> request);
+
+    /**
+     * Get the time to wait before retrying the request.
+     *
+     * @param request    the failed request.
+     * @param retryCount the number of this retry, starts from 1.
+     * @param e          the failure of the last attempt.
+     * @return the delay in milliseconds, less than 0 means the request is not retried.
+     */
+    long getRetryDelay(BasicRequest<?> request, int retryCount, Exception e);
+
+    /**
+     * <p>
+     * Exponential backoff with full jitter, the delay of the nth retry is random between 0 and
+     * {@code baseDelay * 2^(n-1)}, and not more than the {@code maxDelay}.
+     * </p>
+     * Only the network failures are retried, and the non-idempotent requests such as {@code POST} are only retried
+     * when the connection could not be established, because the server may have received them.
+     * <p>
+     * The retries are limited by a budget: every request adds the {@code budgetRatio} to it and every retry takes 1
+     * from it, so the retries are at most about that ratio of the requests when the server is down, rather than
+     * multiplying the load. The budget is shared by the requests using the same policy.
+     * </p>
+     */
+    class Backoff
+      implements RetryPolicy {
+
+        private static final float MAX_BUDGET = 10;
+
+        private final Random mRandom = new Random();
+        private final long mBaseDelay;
+        private final long mMaxDelay;
+        private final float mBudgetRatio;
+        private float mBudget = MAX_BUDGET;
+
+        /**
+         * The base delay is 100ms, the max delay is 10s and the budget ratio is 0.1.
+         */
+        public Backoff() {
+            this(100, 10 * 1000, 0.1F);
+        }
+
+        /**
+         * @param baseDelay   the delay of the first retry in milliseconds.
+         * @param maxDelay    the max delay of each retry in milliseconds.
+         * @param budgetRatio the retries allowed for each request, such as 0.1.
+         */
+        public Backoff(long baseDelay, long maxDelay, float budgetRatio) {
+            if (baseDelay < 0 || maxDelay < baseDelay)
+                throw new IllegalArgumentException("The baseDelay can not be less than 0 or greater than the maxDelay.");
+            if (budgetRatio < 0) throw new IllegalArgumentException("The budgetRatio can not be less than 0.");
+            this.mBaseDelay = baseDelay;
+            this.mMaxDelay = maxDelay;
+            this.mBudgetRatio = budgetRatio;
+        }
+
+        @Override
+        public synchronized void onExecute(BasicRequest<?> request) {
+            mBudget = Math.min(MAX_BUDGET, mBudget + mBudgetRatio);
+        }
+
+        @Override
+        public long getRetryDelay(BasicRequest<?> request, int retryCount, Exception e) {
+            if (!isRetryable(e)) return -1;
+            if (!isConnectFailure(e) && !request.getRequestMethod().isIdempotent()) return -1;
+            if (!acquire()) {
+                Logger.w("The retry budget is used up, give up retrying: " + request.url() + ".");
+                return -1;
+            }
+
+            long ceiling = mBaseDelay << Math.min(retryCount - 1, 30);
+            if (ceiling <= 0 || ceiling > mMaxDelay) ceiling = mMaxDelay;
+            return (long)(mRandom.nextDouble() * ceiling);
+        }
+
+        private synchronized boolean acquire() {
+            if (mBudget < 1) return false;
+            mBudget -= 1;
+            return true;
+        }
+
+        /**
+         * Whether the failure is transient, so a retry may succeed.
+         */
+        protected boolean isRetryable(Exception e) {
+            // The request is interrupted, such as canceled.
+            if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) return false;
+            if (e instanceof MalformedURLException || e instanceof UnknownServiceException) return false;
+            if (e instanceof ProtocolException) return false;
+            if (e instanceof SSLPeerUnverifiedException) return false;
+            if (e instanceof SSLHandshakeException && e.getCause() instanceof CertificateException)
+                return false;
+            return e instanceof IOException;
+        }
+
+        /**
+         * Whether the failure happened before the request was sent.
+         */
+        protected boolean isConnectFailure(Exception e) {
+            return e instanceof ConnectException || e instanceof NoRouteToHostException ||
+              e instanceof PortUnreachableException || e instanceof UnknownHostException;
+        }
+    }
+}
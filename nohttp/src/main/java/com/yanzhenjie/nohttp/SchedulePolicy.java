@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import com.yanzhenjie.nohttp.able.Schedulable;
+
+import java.util.Comparator;
+
+/**
+ * <p>
+ * The order in which the queue executes the works, the smaller work is executed first.
+ * </p>
+ * The order of two works must not change while they are waiting, so the policy can only depend on the values that
+ * are fixed when the work is added to the queue.
+ */
+public interface SchedulePolicy
+  extends Comparator<Schedulable> {
+
+    /**
+     * Higher priority first, the same priority is first in first out. This is the default policy.
+     */
+    SchedulePolicy PRIORITY = new PriorityFirst();
+
+    /**
+     * Higher priority first, the same priority is last in first out, such as the images of a scrolling list, the
+     * images just scrolled into the screen should be loaded first.
+     */
+    SchedulePolicy LIFO = new LastInFirstOut();
+
+    /**
+     * Earliest deadline first, the works without deadline are executed after them by {@link #PRIORITY}.
+     *
+     * @see BasicRequest#setDeadline(int)
+     */
+    SchedulePolicy EARLIEST_DEADLINE = new EarliestDeadlineFirst();
+
+    /**
+     * Higher priority first, the same priority is first in first out.
+     */
+    class PriorityFirst
+      implements SchedulePolicy {
+
+        @Override
+        public int compare(Schedulable w1, Schedulable w2) {
+            Priority p1 = w1.getRequest().getPriority();
+            Priority p2 = w2.getRequest().getPriority();
+            return p1 == p2 ? w1.getSequence() - w2.getSequence() : p2.ordinal() - p1.ordinal();
+        }
+    }
+
+    /**
+     * Higher priority first, the same priority is last in first out.
+     */
+    class LastInFirstOut
+      implements SchedulePolicy {
+
+        @Override
+        public int compare(Schedulable w1, Schedulable w2) {
+            Priority p1 = w1.getRequest().getPriority();
+            Priority p2 = w2.getRequest().getPriority();
+            return p1 == p2 ? w2.getSequence() - w1.getSequence() : p2.ordinal() - p1.ordinal();
+        }
+    }
+
+    /**
+     * Earliest deadline first, the works without deadline are ordered by priority after them.
+     */
+    class EarliestDeadlineFirst
+      implements SchedulePolicy {
+
+        @Override
+        public int compare(Schedulable w1, Schedulable w2) {
+            int d1 = w1.getRequest().getDeadline();
+            int d2 = w2.getRequest().getDeadline();
+            if (d1 > 0 && d2 > 0) {
+                long t1 = w1.getAddTime() + d1;
+                long t2 = w2.getAddTime() + d2;
+                return t1 == t2 ? w1.getSequence() - w2.getSequence() : (t1 < t2 ? -1 : 1);
+            }
+            if (d1 > 0) return -1;
+            if (d2 > 0) return 1;
+            return PRIORITY.compare(w1, w2);
+        }
+    }
+
+    /**
+     * Priority with aging, a waiting work is raised one priority every {@code agingMillis}, so the works of low
+     * priority will not be starved by a steady stream of high priority works.
+     */
+    class Aging
+      implements SchedulePolicy {
+
+        private final long mAgingMillis;
+
+        /**
+         * @param agingMillis the time of waiting to raise one priority, millisecond.
+         */
+        public Aging(long agingMillis) {
+            if (agingMillis <= 0) throw new IllegalArgumentException("The agingMillis must be greater than 0.");
+            this.mAgingMillis = agingMillis;
+        }
+
+        @Override
+        public int compare(Schedulable w1, Schedulable w2) {
+            // Priority + waited / aging, the current time is the same for both, so it is left out.
+            long r1 = w1.getRequest().getPriority().ordinal() * mAgingMillis - w1.getAddTime();
+            long r2 = w2.getRequest().getPriority().ordinal() * mAgingMillis - w2.getAddTime();
+            return r1 == r2 ? w1.getSequence() - w2.getSequence() : (r1 > r2 ? -1 : 1);
+        }
+    }
+}
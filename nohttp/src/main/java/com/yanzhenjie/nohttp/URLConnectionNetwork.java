@@ -33,9 +33,20 @@ import java.util.Map;
 public class URLConnectionNetwork implements Network {
 
     private HttpURLConnection mUrlConnection;
+    private final boolean isReuse;
+    private int mResponseCode = -1;
 
     public URLConnectionNetwork(HttpURLConnection urlConnection) {
+        this(urlConnection, false);
+    }
+
+    /**
+     * @param urlConnection {@link HttpURLConnection}.
+     * @param isReuse       release the connection to the keep-alive pool rather than disconnect it.
+     */
+    public URLConnectionNetwork(HttpURLConnection urlConnection, boolean isReuse) {
         this.mUrlConnection = urlConnection;
+        this.isReuse = isReuse;
     }
 
     @Override
@@ -45,7 +56,8 @@ public class URLConnectionNetwork implements Network {
 
     @Override
     public int getResponseCode() throws IOException {
-        return mUrlConnection.getResponseCode();
+        mResponseCode = mUrlConnection.getResponseCode();
+        return mResponseCode;
     }
 
     @Override
@@ -60,6 +72,9 @@ public class URLConnectionNetwork implements Network {
 
     @Override
     public void close() throws IOException {
+        // The connection failed before the response can not be reused.
+        if (isReuse && mResponseCode > 0 && URLConnectionNetworkExecutor.release(mUrlConnection, mResponseCode))
+            return;
         IOUtils.closeQuietly(mUrlConnection);
     }
 }
\ No newline at end of file
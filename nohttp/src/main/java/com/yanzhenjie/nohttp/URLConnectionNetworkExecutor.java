@@ -18,6 +18,7 @@ package com.yanzhenjie.nohttp;
 import android.os.Build;
 
 import com.yanzhenjie.nohttp.tools.HeaderUtils;
+import com.yanzhenjie.nohttp.tools.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,7 +39,35 @@ import javax.net.ssl.SSLSocketFactory;
  * </p>
  * Created by Yan Zhenjie on 2016/10/15.
  */
-public class URLConnectionNetworkExecutor implements NetworkExecutor {
+public class URLConnectionNetworkExecutor implements NetworkExecutor, Preconnectable {
+
+    /**
+     * The max size of the unread response read to reuse the connection, the larger one is disconnected.
+     */
+    private static final long MAX_DRAIN_SIZE = 64 * 1024;
+
+    private final boolean isReuse;
+
+    /**
+     * The connection is disconnected after each request.
+     */
+    public URLConnectionNetworkExecutor() {
+        this.isReuse = false;
+    }
+
+    /**
+     * <p>
+     * Reuse the connections by the keep-alive pool of the platform, the rest of the response is read and closed
+     * rather than disconnected, so the next request to the host skips the TCP and TLS handshakes.
+     * </p>
+     * The pool is shared by all {@link HttpURLConnection} of the process, its size and keep-alive duration can be
+     * configured by {@link InitializationConfig.Builder#keepAlive(int, long)}.
+     *
+     * @param isReuse true to reuse the connections, false to disconnect them after each request.
+     */
+    public URLConnectionNetworkExecutor(boolean isReuse) {
+        this.isReuse = isReuse;
+    }
 
     @Override
     public Network execute(BasicRequest request) throws Exception {
@@ -100,7 +129,23 @@ public class URLConnectionNetworkExecutor implements NetworkExecutor {
         }
         // 5. Connect
         connection.connect();
-        return new URLConnectionNetwork(connection);
+        return new URLConnectionNetwork(connection, isReuse);
+    }
+
+    /**
+     * Send the request and put its connection into the keep-alive pool, a new connection is opened only if the pool
+     * has no idle connection to the host.
+     */
+    @Override
+    public boolean preconnect(BasicRequest<?> request) throws Exception {
+        if (!isReuse) return false;
+        Network network = execute(request);
+        try {
+            network.getResponseCode();
+        } finally {
+            network.close();
+        }
+        return true;
     }
 
     private boolean isAllowBody(RequestMethod requestMethod) {
@@ -111,6 +156,23 @@ public class URLConnectionNetworkExecutor implements NetworkExecutor {
         return allowRequestBody;
     }
 
+    /**
+     * Read the rest of the response and close it, so the connection returns to the keep-alive pool.
+     *
+     * @param urlConnection the connection whose response code has been read.
+     * @param responseCode  response code of connection.
+     * @return false if the connection can not be reused, it should be disconnected.
+     */
+    public static boolean release(HttpURLConnection urlConnection, int responseCode) {
+        try {
+            InputStream inputStream = responseCode >= 400 ?
+                    urlConnection.getErrorStream() : urlConnection.getInputStream();
+            return IOUtils.drainQuietly(inputStream, MAX_DRAIN_SIZE);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     /**
      * Get input stream from connection.
      *
@@ -0,0 +1,806 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import android.os.Looper;
+
+import com.yanzhenjie.nohttp.able.Schedulable;
+
+import java.net.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * The queue of the dispatchers, it limits the number of works being executed for each host and each route.
+ * A work whose host or route is full stays in the queue, but does not block the works of other hosts.
+ * </p>
+ * The route is the scheme, host, port and proxy of the url. The works are executed in the order of the
+ * {@link SchedulePolicy}, the number of works waiting in the queue can be bounded by {@link #setCapacity(int,
+ * RejectPolicy)}. The works of each route are kept in a heap that knows the position of each work, so a work can be
+ * removed in O(log n) when it is canceled. The total number of works being executed can be limited by an adaptive
+ * {@link ConcurrencyLimit}.
+ */
+public class WorkQueue<E extends Schedulable> {
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mAvailable = mLock.newCondition();
+    private final Condition mNotFull = mLock.newCondition();
+    private final Condition mEmpty = mLock.newCondition();
+
+    private final Map<String, Heap<E>> mRouteQueues = new LinkedHashMap<>();
+    private final Map<E, Node<E>> mNodes = new HashMap<>();
+    private final Map<String, Counter> mHostCounters = new HashMap<>();
+    private final Map<String, Counter> mRouteCounters = new HashMap<>();
+
+    private SchedulePolicy mPolicy = SchedulePolicy.PRIORITY;
+    private int mMaxPerHost = Integer.MAX_VALUE;
+    private int mMaxPerRoute = Integer.MAX_VALUE;
+    private int mSize;
+    private int mRunning;
+    private ConcurrencyLimit mConcurrencyLimit;
+
+    private int mCapacity = Integer.MAX_VALUE;
+    private RejectPolicy mRejectPolicy = RejectPolicy.REJECT;
+    private int mHighWaterMark;
+    private OnHighWaterListener mHighWaterListener;
+    private boolean isAboveHighWater;
+
+    public WorkQueue() {
+    }
+
+    /**
+     * Set the order in which the works are executed, the works in the queue are reordered.
+     *
+     * @param policy the default value is {@link SchedulePolicy#PRIORITY}.
+     */
+    public void setPolicy(SchedulePolicy policy) {
+        if (policy == null) throw new IllegalArgumentException("The policy can not be null.");
+        mLock.lock();
+        try {
+            mPolicy = policy;
+            for (Heap<E> heap : mRouteQueues.values()) {
+                heap.setComparator(policy);
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set the maximum number of works being executed for each host.
+     *
+     * @param max the default value is {@link Integer#MAX_VALUE}, that is to say, not limited.
+     */
+    public void setMaxPerHost(int max) {
+        if (max <= 0) throw new IllegalArgumentException("The max must be greater than 0.");
+        mLock.lock();
+        try {
+            mMaxPerHost = max;
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set the maximum number of works being executed for each route.
+     *
+     * @param max the default value is {@link Integer#MAX_VALUE}, that is to say, not limited.
+     */
+    public void setMaxPerRoute(int max) {
+        if (max <= 0) throw new IllegalArgumentException("The max must be greater than 0.");
+        mLock.lock();
+        try {
+            mMaxPerRoute = max;
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set the adaptive limit of the number of works being executed, it is resized by the samples given to
+     * {@link #finish(Schedulable, long, boolean)}.
+     *
+     * @param limit the default value is null, that is to say, not limited.
+     */
+    public void setConcurrencyLimit(ConcurrencyLimit limit) {
+        mLock.lock();
+        try {
+            mConcurrencyLimit = limit;
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Get the current limit of the number of works being executed.
+     *
+     * @return {@link Integer#MAX_VALUE} if the {@link ConcurrencyLimit} is not set.
+     */
+    public int getConcurrencyLimit() {
+        mLock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return mConcurrencyLimit == null ? Integer.MAX_VALUE : Math.max(1, mConcurrencyLimit.getLimit());
+    }
+
+    /**
+     * Set the maximum number of works waiting in the queue, and what to do when the queue is full.
+     *
+     * @param capacity the default value is {@link Integer#MAX_VALUE}, that is to say, not limited.
+     * @param policy   the default value is {@link RejectPolicy#REJECT}.
+     */
+    public void setCapacity(int capacity, RejectPolicy policy) {
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be greater than 0.");
+        if (policy == null) throw new IllegalArgumentException("The policy can not be null.");
+        mLock.lock();
+        try {
+            mCapacity = capacity;
+            mRejectPolicy = policy;
+            mNotFull.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Listen to the number of works waiting in the queue reaching the mark.
+     *
+     * @param mark     the high-water mark, 0 means no listening.
+     * @param listener {@link OnHighWaterListener}.
+     */
+    public void setHighWaterMark(int mark, OnHighWaterListener listener) {
+        if (mark < 0) throw new IllegalArgumentException("The mark can not be less than 0.");
+        mLock.lock();
+        try {
+            mHighWaterMark = mark;
+            mHighWaterListener = listener;
+            isAboveHighWater = false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Add a work to the queue.
+     *
+     * @return the work that is rejected or dropped because the queue is full, it may be the work to add, or null if
+     * no work is rejected.
+     */
+    public E add(E work) {
+        BasicRequest<?> request = work.getRequest();
+        String url = request.url();
+        String host = parseHost(url);
+        String route = parseRoute(url, request.getProxy());
+
+        E rejected = null;
+        OnHighWaterListener listener = null;
+        int size = 0;
+        mLock.lock();
+        try {
+            if (mNodes.containsKey(work)) throw new IllegalStateException("The work has been added.");
+
+            if (mSize >= mCapacity) {
+                switch (mRejectPolicy) {
+                    case REJECT: {
+                        return work;
+                    }
+                    case DROP_OLDEST: {
+                        E victim = findVictim();
+                        if (victim == null || lowerThan(work, victim)) return work;
+                        removeQueued(victim);
+                        rejected = victim;
+                        break;
+                    }
+                    case BLOCK: {
+                        // Blocking the main thread is worse than rejecting.
+                        if (Looper.myLooper() == Looper.getMainLooper()) return work;
+                        try {
+                            while (mSize >= mCapacity) {
+                                mNotFull.await();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return work;
+                        }
+                        break;
+                    }
+                }
+            }
+
+            enqueue(work, host, route);
+
+            if (mHighWaterMark > 0 && !isAboveHighWater && mSize >= mHighWaterMark) {
+                isAboveHighWater = true;
+                listener = mHighWaterListener;
+                size = mSize;
+            }
+        } finally {
+            mLock.unlock();
+        }
+
+        if (listener != null) listener.onHighWater(size);
+        return rejected;
+    }
+
+    /**
+     * Put back a work that was removed from the queue, it is not limited by the capacity because it has been
+     * accepted once.
+     */
+    public void restore(E work) {
+        BasicRequest<?> request = work.getRequest();
+        String url = request.url();
+        mLock.lock();
+        try {
+            Node<E> node = mNodes.get(work);
+            if (node != null) {
+                if (!node.held) throw new IllegalStateException("The work has been added.");
+                mNodes.remove(work);
+            }
+            enqueue(work, parseHost(url), parseRoute(url, request.getProxy()));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Take a work that has not been taken out of the reach of the dispatchers, it is still waited by
+     * {@link #awaitEmpty(long)} until it is restored by {@link #restore(Schedulable)} or removed.
+     *
+     * @return false if the work is not in the queue or has been taken.
+     */
+    public boolean hold(E work) {
+        mLock.lock();
+        try {
+            Node<E> node = mNodes.get(work);
+            if (node == null || node.running || node.held) return false;
+
+            Heap<E> heap = mRouteQueues.get(node.route);
+            heap.remove(node);
+            if (heap.size == 0) mRouteQueues.remove(node.route);
+            release(mHostCounters, node.host, false);
+            release(mRouteCounters, node.route, false);
+            mSize--;
+            onSizeDecreased();
+            node.held = true;
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Release the place of the host and route of a work taken from this queue without finishing it, such as it waits
+     * for another work. It is still waited by {@link #awaitEmpty(long)} until it is restored by
+     * {@link #restore(Schedulable)} or removed.
+     *
+     * @return false if the work has not been taken.
+     */
+    public boolean suspend(E work) {
+        mLock.lock();
+        try {
+            Node<E> node = mNodes.get(work);
+            if (node == null || !node.running) return false;
+
+            mRunning--;
+            release(mHostCounters, node.host, true);
+            release(mRouteCounters, node.route, true);
+            node.running = false;
+            node.held = true;
+            mAvailable.signalAll();
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void enqueue(E work, String host, String route) {
+        Node<E> node = new Node<>(work, host, route);
+        mNodes.put(work, node);
+
+        Heap<E> heap = mRouteQueues.get(route);
+        if (heap == null) {
+            heap = new Heap<>(mPolicy);
+            mRouteQueues.put(route, heap);
+        }
+        heap.add(node);
+        counter(mHostCounters, host).queued++;
+        counter(mRouteCounters, route).queued++;
+        mSize++;
+        mAvailable.signalAll();
+    }
+
+    /**
+     * Find the oldest work of the lowest priority waiting in the queue.
+     */
+    private E findVictim() {
+        E victim = null;
+        for (Heap<E> heap : mRouteQueues.values()) {
+            for (int i = 0; i < heap.size; i++) {
+                E work = heap.nodes[i].work;
+                if (victim == null || lowerThan(work, victim)) victim = work;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * The first work has a lower priority, or the same priority but is added earlier.
+     */
+    private static boolean lowerThan(Schedulable w1, Schedulable w2) {
+        Priority p1 = w1.getRequest().getPriority();
+        Priority p2 = w2.getRequest().getPriority();
+        return p1 == p2 ? w1.getSequence() < w2.getSequence() : p1.ordinal() < p2.ordinal();
+    }
+
+    /**
+     * Retrieves and removes the first work by the policy whose host and route are not full, waiting if
+     * necessary until such a work becomes available.
+     *
+     * @return the work, it must be passed to {@link #finish(Schedulable)} after execution.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            E work;
+            while ((work = pollAvailable()) == null) {
+                mAvailable.await();
+            }
+            return work;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the first work like {@link #take()}, waiting up to the timeout if necessary.
+     *
+     * @param timeout the time to wait in milliseconds.
+     * @return the work, or null if no work becomes available before the timeout.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E poll(long timeout) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            E work;
+            while ((work = pollAvailable()) == null) {
+                if (nanos <= 0) return null;
+                nanos = mAvailable.awaitNanos(nanos);
+            }
+            return work;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private E pollAvailable() {
+        if (mRunning >= currentLimit()) return null;
+
+        Heap<E> target = null;
+        for (Heap<E> heap : mRouteQueues.values()) {
+            Node<E> head = heap.peek();
+            if (head == null) continue;
+
+            if (mHostCounters.get(head.host).running >= mMaxPerHost) continue;
+            if (mRouteCounters.get(head.route).running >= mMaxPerRoute) continue;
+            if (target == null || mPolicy.compare(head.work, target.peek().work) < 0) target = heap;
+        }
+        if (target == null) return null;
+
+        Node<E> node = target.poll();
+        E work = node.work;
+        node.running = true;
+        Counter hostCounter = mHostCounters.get(node.host);
+        hostCounter.queued--;
+        hostCounter.running++;
+        Counter routeCounter = mRouteCounters.get(node.route);
+        routeCounter.queued--;
+        routeCounter.running++;
+        if (target.size == 0) mRouteQueues.remove(node.route);
+        mSize--;
+        mRunning++;
+        onSizeDecreased();
+        return work;
+    }
+
+    /**
+     * The work taken from this queue has been executed, release its place of the host and route.
+     */
+    public void finish(E work) {
+        finish(work, -1, false);
+    }
+
+    /**
+     * The work taken from this queue has been executed through the network, release its place of the host and route,
+     * and give its latency and result to the {@link ConcurrencyLimit}.
+     *
+     * @param rtt       the time the work took in milliseconds, less than 0 means it is not a sample of the network,
+     *                  such as the work is canceled or its response is from the cache.
+     * @param isDropped the work failed because of a timeout or the server is overloaded.
+     */
+    public void finish(E work, long rtt, boolean isDropped) {
+        mLock.lock();
+        try {
+            Node<E> node = mNodes.get(work);
+            if (node == null || !node.running) return;
+
+            if (rtt >= 0 && mConcurrencyLimit != null) mConcurrencyLimit.onSample(rtt, mRunning, isDropped);
+            mNodes.remove(work);
+            mRunning--;
+            release(mHostCounters, node.host, true);
+            release(mRouteCounters, node.route, true);
+            mAvailable.signalAll();
+            if (mNodes.isEmpty()) mEmpty.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Take a place of the host and route of the url for an execution that is not a work of this queue, such as a
+     * hedged attempt of a work being executed. It only takes the spare place, the works waiting in the queue go first.
+     *
+     * @return false if a work is waiting, or the host, the route or the concurrency limit is full.
+     */
+    public boolean acquire(String url, Proxy proxy) {
+        String host = parseHost(url);
+        String route = parseRoute(url, proxy);
+        mLock.lock();
+        try {
+            if (mSize > 0 || mRunning >= currentLimit()) return false;
+            Counter hostCounter = mHostCounters.get(host);
+            if (hostCounter != null && hostCounter.running >= mMaxPerHost) return false;
+            Counter routeCounter = mRouteCounters.get(route);
+            if (routeCounter != null && routeCounter.running >= mMaxPerRoute) return false;
+
+            counter(mHostCounters, host).running++;
+            counter(mRouteCounters, route).running++;
+            mRunning++;
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Give back the place taken by {@link #acquire(String, Proxy)}.
+     */
+    public void release(String url, Proxy proxy) {
+        String host = parseHost(url);
+        String route = parseRoute(url, proxy);
+        mLock.lock();
+        try {
+            mRunning--;
+            release(mHostCounters, host, true);
+            release(mRouteCounters, route, true);
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Remove a work that has not been taken or is held from the queue.
+     *
+     * @return true if the work was in the queue, otherwise false.
+     */
+    public boolean remove(E work) {
+        mLock.lock();
+        try {
+            Node<E> node = mNodes.get(work);
+            if (node == null || node.running) return false;
+
+            if (node.held) {
+                mNodes.remove(work);
+                if (mNodes.isEmpty()) mEmpty.signalAll();
+                return true;
+            }
+            removeQueued(work);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void removeQueued(E work) {
+        Node<E> node = mNodes.remove(work);
+        Heap<E> heap = mRouteQueues.get(node.route);
+        heap.remove(node);
+        if (heap.size == 0) mRouteQueues.remove(node.route);
+        release(mHostCounters, node.host, false);
+        release(mRouteCounters, node.route, false);
+        mSize--;
+        onSizeDecreased();
+        if (mNodes.isEmpty()) mEmpty.signalAll();
+    }
+
+    /**
+     * Remove all works that have not been taken from the queue, the held works are left to their holders.
+     *
+     * @return the removed works in the order of the policy.
+     */
+    public List<E> drain() {
+        mLock.lock();
+        try {
+            List<E> works = new ArrayList<>(mSize);
+            for (Map.Entry<E, Node<E>> entry : mNodes.entrySet()) {
+                Node<E> node = entry.getValue();
+                if (!node.running && !node.held) works.add(entry.getKey());
+            }
+            for (E work : works) {
+                removeQueued(work);
+            }
+            Collections.sort(works, mPolicy);
+            return works;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until there is no work in the queue or being executed.
+     *
+     * @param timeout the time to wait in milliseconds.
+     * @return true if the queue is empty, false if the timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitEmpty(long timeout) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            while (!mNodes.isEmpty()) {
+                if (nanos <= 0) return false;
+                nanos = mEmpty.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void onSizeDecreased() {
+        mNotFull.signal();
+        if (isAboveHighWater && mSize < mHighWaterMark) isAboveHighWater = false;
+    }
+
+    /**
+     * The number of works that have not been taken.
+     */
+    public int size() {
+        mLock.lock();
+        try {
+            return mSize;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * The number of works of the host that have not been taken.
+     */
+    public int queuedSize(String host) {
+        mLock.lock();
+        try {
+            Counter counter = mHostCounters.get(host);
+            return counter == null ? 0 : counter.queued;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * The number of works of the host being executed.
+     */
+    public int runningSize(String host) {
+        mLock.lock();
+        try {
+            Counter counter = mHostCounters.get(host);
+            return counter == null ? 0 : counter.running;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * The hosts that have works in the queue or being executed.
+     */
+    public Set<String> hosts() {
+        mLock.lock();
+        try {
+            return new HashSet<>(mHostCounters.keySet());
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private static Counter counter(Map<String, Counter> counters, String key) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(key, counter);
+        }
+        return counter;
+    }
+
+    private static void release(Map<String, Counter> counters, String key, boolean running) {
+        Counter counter = counters.get(key);
+        if (running) counter.running--;
+        else counter.queued--;
+        if (counter.queued == 0 && counter.running == 0) counters.remove(key);
+    }
+
+    /**
+     * Parse the host of the url.
+     *
+     * @param url url.
+     * @return the host, or empty string if the url is malformed.
+     */
+    public static String parseHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static String parseRoute(String url, Proxy proxy) {
+        String route;
+        try {
+            URL u = new URL(url);
+            int port = u.getPort() == -1 ? u.getDefaultPort() : u.getPort();
+            route = u.getProtocol() + "://" + u.getHost() + ":" + port;
+        } catch (Exception e) {
+            route = "";
+        }
+        return proxy == null ? route : route + "@" + proxy;
+    }
+
+    private static class Node<E> {
+
+        private final E work;
+        private final String host;
+        private final String route;
+        private boolean running;
+        /**
+         * Taken out of the reach of the dispatchers, but not finished.
+         */
+        private boolean held;
+        /**
+         * The position in the heap, -1 if it is not in the heap.
+         */
+        private int index = -1;
+
+        private Node(E work, String host, String route) {
+            this.work = work;
+            this.host = host;
+            this.route = route;
+        }
+    }
+
+    /**
+     * A binary min-heap of the nodes, each node knows its position, so it can be removed without searching.
+     */
+    private static class Heap<E> {
+
+        private Node<E>[] nodes;
+        private int size;
+        private Comparator<? super E> comparator;
+
+        @SuppressWarnings("unchecked")
+        private Heap(Comparator<? super E> comparator) {
+            this.nodes = new Node[11];
+            this.comparator = comparator;
+        }
+
+        private void setComparator(Comparator<? super E> comparator) {
+            this.comparator = comparator;
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(i, nodes[i]);
+            }
+        }
+
+        private Node<E> peek() {
+            return size == 0 ? null : nodes[0];
+        }
+
+        private void add(Node<E> node) {
+            if (size == nodes.length) nodes = Arrays.copyOf(nodes, size + (size >> 1));
+            siftUp(size++, node);
+        }
+
+        private Node<E> poll() {
+            if (size == 0) return null;
+            Node<E> head = nodes[0];
+            removeAt(0);
+            return head;
+        }
+
+        private void remove(Node<E> node) {
+            int i = node.index;
+            if (i >= 0 && i < size && nodes[i] == node) removeAt(i);
+        }
+
+        private void removeAt(int i) {
+            nodes[i].index = -1;
+            int last = --size;
+            Node<E> moved = nodes[last];
+            nodes[last] = null;
+            if (i == last) return;
+
+            siftDown(i, moved);
+            if (nodes[i] == moved) siftUp(i, moved);
+        }
+
+        private void siftUp(int i, Node<E> node) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                Node<E> p = nodes[parent];
+                if (comparator.compare(node.work, p.work) >= 0) break;
+                place(i, p);
+                i = parent;
+            }
+            place(i, node);
+        }
+
+        private void siftDown(int i, Node<E> node) {
+            int half = size >>> 1;
+            while (i < half) {
+                int child = (i << 1) + 1;
+                Node<E> c = nodes[child];
+                int right = child + 1;
+                if (right < size && comparator.compare(nodes[right].work, c.work) < 0) c = nodes[child = right];
+                if (comparator.compare(node.work, c.work) <= 0) break;
+                place(i, c);
+                i = child;
+            }
+            place(i, node);
+        }
+
+        private void place(int i, Node<E> node) {
+            nodes[i] = node;
+            node.index = i;
+        }
+    }
+
+    private static class Counter {
+
+        private int queued;
+        private int running;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.able;
+
+import com.yanzhenjie.nohttp.BasicRequest;
+
+/**
+ * <p>A work that can be scheduled by the {@link com.yanzhenjie.nohttp.WorkQueue}.</p>
+ */
+public interface Schedulable
+  extends Cancelable {
+
+    /**
+     * Gets the request to be executed by this work.
+     *
+     * @return {@link BasicRequest}.
+     */
+    BasicRequest<?> getRequest();
+
+    /**
+     * Gets the sequence of this work, the work added to the queue later has a larger sequence.
+     */
+    int getSequence();
+
+    /**
+     * Gets the time when this work was created, in {@link android.os.SystemClock#elapsedRealtime()}.
+     */
+    long getAddTime();
+
+}
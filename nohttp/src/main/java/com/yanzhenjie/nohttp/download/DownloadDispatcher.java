@@ -16,35 +16,38 @@
 package com.yanzhenjie.nohttp.download;
 
 import com.yanzhenjie.nohttp.Logger;
+import com.yanzhenjie.nohttp.WorkQueue;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * <p> Download queue polling thread. </p> Created in Oct 21, 2015 2:46:23 PM.
+ * <p> Download queue polling thread, it takes the work from the queue and runs it on itself. </p> Created in Oct 21, 2015 2:46:23 PM.
  *
  * @author Yan Zhenjie.
  */
 class DownloadDispatcher
   extends Thread {
 
-    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
-        private final AtomicInteger mCount = new AtomicInteger(1);
+    private static final AtomicInteger COUNT = new AtomicInteger(1);
 
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "Download #" + mCount.getAndIncrement());
-        }
-    };
+    private final WorkQueue<Work<? extends DownloadRequest>> mQueue;
+    private final DownloadQueue mOwner;
+    private final Object mLock = new Object();
+    private volatile boolean mQuit = false;
+    private volatile boolean isRetired;
+    private boolean isIdle;
 
-    private final Executor mExecutor = Executors.newCachedThreadPool(THREAD_FACTORY);
-    private final BlockingQueue<Work<? extends DownloadRequest>> mQueue;
-    private boolean mQuit = false;
+    public DownloadDispatcher(WorkQueue<Work<? extends DownloadRequest>> queue) {
+        this(queue, null);
+    }
 
-    public DownloadDispatcher(BlockingQueue<Work<? extends DownloadRequest>> queue) {
+    /**
+     * @param owner the queue whose keep-alive time decides when the idle dispatcher exits.
+     */
+    public DownloadDispatcher(WorkQueue<Work<? extends DownloadRequest>> queue, DownloadQueue owner) {
+        super("Download #" + COUNT.getAndIncrement());
         this.mQueue = queue;
+        this.mOwner = owner;
     }
 
     public void quit() {
@@ -52,29 +55,64 @@ class DownloadDispatcher
         interrupt();
     }
 
+    /**
+     * Exit after the work being executed is finished, the work is not interrupted.
+     */
+    public void retire() {
+        synchronized (mLock) {
+            isRetired = true;
+            if (isIdle) interrupt();
+        }
+    }
+
+    /**
+     * Whether the dispatcher is waiting for a work.
+     */
+    public boolean isIdle() {
+        synchronized (mLock) {
+            return isIdle;
+        }
+    }
+
     @Override
     public void run() {
         while (!mQuit) {
-            final Work<? extends DownloadRequest> work;
+            synchronized (mLock) {
+                if (isRetired) break;
+                isIdle = true;
+            }
+
+            long keepAlive = mOwner == null ? 0 : mOwner.getKeepAliveTime();
+            Work<? extends DownloadRequest> work;
             try {
-                work = mQueue.take();
+                work = keepAlive > 0 ? mQueue.poll(keepAlive) : mQueue.take();
             } catch (InterruptedException e) {
                 if (mQuit) {
                     Logger.w("Queue exit, stop blocking.");
                     break;
                 }
+                if (isRetired) break;
                 Logger.e(e);
                 continue;
+            } finally {
+                synchronized (mLock) {
+                    isIdle = false;
+                }
             }
+            if (work == null) {
+                if (mOwner.onIdle(this)) break;
+                continue;
+            }
+            // Clear the interrupt of retire() that came after the work was taken, the work is executed first.
+            if (isRetired) Thread.interrupted();
 
-            synchronized (this) {
-                work.setLock(this);
-                mExecutor.execute(work);
-                try {
-                    this.wait();
-                } catch (InterruptedException ignored) {
-                }
+            try {
+                work.run();
+            } finally {
+                mQueue.finish(work);
             }
+            // Clear the interrupt left by canceling the work, the next take() should block normally.
+            Thread.interrupted();
         }
     }
 }
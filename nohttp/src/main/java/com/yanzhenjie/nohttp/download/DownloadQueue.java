@@ -16,11 +16,21 @@
 package com.yanzhenjie.nohttp.download;
 
 import com.yanzhenjie.nohttp.CancelerManager;
-import com.yanzhenjie.nohttp.HandlerDelivery;
+import com.yanzhenjie.nohttp.Delivery;
+import com.yanzhenjie.nohttp.Logger;
+import com.yanzhenjie.nohttp.OnHighWaterListener;
+import com.yanzhenjie.nohttp.RejectPolicy;
+import com.yanzhenjie.nohttp.SchedulePolicy;
 import com.yanzhenjie.nohttp.Headers;
-
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import com.yanzhenjie.nohttp.NoHttp;
+import com.yanzhenjie.nohttp.WorkQueue;
+import com.yanzhenjie.nohttp.error.QueueFullError;
+import com.yanzhenjie.nohttp.error.QueueShutdownError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -33,15 +43,20 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class DownloadQueue {
 
     private AtomicInteger mInteger = new AtomicInteger(1);
-    private final BlockingQueue<Work<? extends DownloadRequest>> mQueue = new PriorityBlockingQueue<>();
+    private final WorkQueue<Work<? extends DownloadRequest>> mQueue = new WorkQueue<>();
     private final CancelerManager mCancelerManager = new CancelerManager();
-    private DownloadDispatcher[] mDispatchers;
+    private volatile Delivery mDelivery;
+    private final List<DownloadDispatcher> mDispatchers = new ArrayList<>();
+    private volatile int mPoolSize;
+    private volatile long mKeepAlive;
+    private boolean isStarted;
+    private volatile boolean isShutdown;
 
     /**
      * @param threadPoolSize number of thread pool.
      */
     public DownloadQueue(int threadPoolSize) {
-        mDispatchers = new DownloadDispatcher[threadPoolSize];
+        mPoolSize = threadPoolSize;
     }
 
     /**
@@ -53,13 +68,160 @@ public class DownloadQueue {
     public void start() {
         stop();
 
-        for (int i = 0; i < mDispatchers.length; i++) {
-            DownloadDispatcher dispatcher = new DownloadDispatcher(mQueue);
-            mDispatchers[i] = dispatcher;
+        synchronized (mDispatchers) {
+            isStarted = true;
+            isShutdown = false;
+            // The dispatchers that may exit are started on demand.
+            if (mKeepAlive == 0) spawn(mPoolSize);
+        }
+    }
+
+    /**
+     * Change the number of the dispatchers while the queue is running, the redundant dispatchers exit after the
+     * downloads they are executing, the queued downloads are kept.
+     *
+     * @param threadPoolSize the new number of thread pool.
+     */
+    public void resize(int threadPoolSize) {
+        if (threadPoolSize <= 0) throw new IllegalArgumentException("The threadPoolSize must be greater than 0.");
+        synchronized (mDispatchers) {
+            mPoolSize = threadPoolSize;
+            if (!isStarted) return;
+            while (mDispatchers.size() > threadPoolSize) {
+                mDispatchers.remove(mDispatchers.size() - 1).retire();
+            }
+            if (mKeepAlive == 0) spawn(threadPoolSize);
+            else spawn(Math.min(threadPoolSize, mDispatchers.size() + mQueue.size()));
+        }
+    }
+
+    /**
+     * Set how long an idle dispatcher waits for a download before it exits, the dispatchers are started again when
+     * the downloads are added, so the queue holds no thread while the app is idle. It takes effect from the next
+     * wait of each dispatcher.
+     *
+     * @param keepAlive the time in milliseconds, the default value is 0, that is to say, the dispatchers never exit.
+     */
+    public void setKeepAliveTime(long keepAlive) {
+        if (keepAlive < 0) throw new IllegalArgumentException("The keepAlive can not be less than 0.");
+        synchronized (mDispatchers) {
+            mKeepAlive = keepAlive;
+            if (isStarted && keepAlive == 0) spawn(mPoolSize);
+        }
+    }
+
+    long getKeepAliveTime() {
+        return mKeepAlive;
+    }
+
+    /**
+     * The number of the dispatcher threads alive.
+     */
+    public int threadSize() {
+        synchronized (mDispatchers) {
+            return mDispatchers.size();
+        }
+    }
+
+    /**
+     * The dispatcher has waited for the keep-alive time without a download.
+     *
+     * @return true if the dispatcher should exit.
+     */
+    boolean onIdle(DownloadDispatcher dispatcher) {
+        synchronized (mDispatchers) {
+            if (!mDispatchers.contains(dispatcher)) return true;
+            // A download was added just now, the dispatcher has to stay for it.
+            if (mQueue.size() > 0) return false;
+            mDispatchers.remove(dispatcher);
+            return true;
+        }
+    }
+
+    /**
+     * Start a dispatcher for the added download if no dispatcher is waiting.
+     */
+    private void ensureDispatcher() {
+        synchronized (mDispatchers) {
+            if (!isStarted || mDispatchers.size() >= mPoolSize) return;
+            for (DownloadDispatcher dispatcher : mDispatchers) {
+                if (dispatcher.isIdle()) return;
+            }
+            spawn(mDispatchers.size() + 1);
+        }
+    }
+
+    private void spawn(int size) {
+        while (mDispatchers.size() < size) {
+            DownloadDispatcher dispatcher = new DownloadDispatcher(mQueue, this);
+            mDispatchers.add(dispatcher);
             dispatcher.start();
         }
     }
 
+    /**
+     * Set the order in which the downloads are executed, the downloads in the queue are reordered.
+     *
+     * @param policy the default value is {@link SchedulePolicy#PRIORITY}.
+     * @see SchedulePolicy
+     */
+    public void setSchedulePolicy(SchedulePolicy policy) {
+        mQueue.setPolicy(policy);
+    }
+
+    /**
+     * Set the maximum number of downloads being executed for each host, the other downloads of the host stay in
+     * the queue without blocking the downloads of other hosts.
+     *
+     * @param max the default value is {@link Integer#MAX_VALUE}, that is to say, only limited by the thread pool.
+     */
+    public void setMaxRequestsPerHost(int max) {
+        mQueue.setMaxPerHost(max);
+    }
+
+    /**
+     * Set the maximum number of downloads being executed for each route, the route is the scheme, host, port and
+     * proxy of the url.
+     *
+     * @param max the default value is {@link Integer#MAX_VALUE}, that is to say, only limited by the thread pool.
+     */
+    public void setMaxRequestsPerRoute(int max) {
+        mQueue.setMaxPerRoute(max);
+    }
+
+    /**
+     * Set the maximum number of downloads waiting in the queue, and what to do when a request is added to the full
+     * queue, the rejected or dropped downloads fail with {@link QueueFullError}.
+     *
+     * @param capacity the default value is {@link Integer#MAX_VALUE}, that is to say, not limited.
+     * @param policy   the default value is {@link RejectPolicy#REJECT}.
+     * @see RejectPolicy
+     */
+    public void setCapacity(int capacity, RejectPolicy policy) {
+        mQueue.setCapacity(capacity, policy);
+    }
+
+    /**
+     * Listen to the number of downloads waiting in the queue reaching the mark.
+     *
+     * @param mark     the high-water mark, 0 means no listening.
+     * @param listener {@link OnHighWaterListener}.
+     */
+    public void setHighWaterMark(int mark, OnHighWaterListener listener) {
+        mQueue.setHighWaterMark(mark, listener);
+    }
+
+    /**
+     * Set the Delivery of the callbacks of the downloads in this queue, such as {@code FrameDelivery} for a large
+     * number of small downloads, or {@code DirectDelivery} for the downloads without UI.
+     *
+     * @param delivery the default value is null, that is to say, the Delivery of {@code InitializationConfig}.
+     * @see com.yanzhenjie.nohttp.InitializationConfig.Builder#delivery(Delivery)
+     */
+    public void setDelivery(Delivery delivery) {
+        this.mDelivery = delivery;
+    }
+
     /**
      * Add a request to the queue.
      *
@@ -74,6 +236,8 @@ public class DownloadQueue {
         work.setSequence(mInteger.incrementAndGet());
 
         callback.setQueue(mQueue);
+        Delivery delivery = mDelivery;
+        callback.setDelivery(delivery == null ? NoHttp.getInitializeConfig().getDelivery() : delivery);
         callback.setCancelerManager(mCancelerManager);
         callback.setWork(work);
         callback.setRequest(request);
@@ -81,7 +245,25 @@ public class DownloadQueue {
         request.setCancelable(work);
 
         mCancelerManager.addCancel(request, work);
-        mQueue.add(work);
+        work.startDeadline();
+        if (isShutdown) {
+            String url = request.url();
+            work.fail(new QueueShutdownError("The queue has been shut down, the request is rejected: " + url + "."));
+            return;
+        }
+        // The add blocks while the queue is full, a dispatcher has to be there to take the downloads.
+        ensureDispatcher();
+        Work<? extends DownloadRequest> rejected = mQueue.add(work);
+        if (rejected != null) {
+            String url = rejected.getRequest().url();
+            rejected.fail(new QueueFullError("The queue is full, the request is rejected: " + url + "."));
+        }
+        // The queue was shut down while the download was being added.
+        if (isShutdown && mQueue.remove(work)) {
+            String url = request.url();
+            work.fail(new QueueShutdownError("The queue has been shut down, the request is rejected: " + url + "."));
+        }
+        ensureDispatcher();
     }
 
     /**
@@ -106,16 +288,111 @@ public class DownloadQueue {
         return mCancelerManager.size();
     }
 
+    /**
+     * The number of downloads of the host that have not been executed yet.
+     *
+     * @param host such as: {@code www.nohttp.net}.
+     */
+    public int unStartSize(String host) {
+        return mQueue.queuedSize(host);
+    }
+
+    /**
+     * The number of downloads of the host being executed.
+     *
+     * @param host such as: {@code www.nohttp.net}.
+     */
+    public int runningSize(String host) {
+        return mQueue.runningSize(host);
+    }
+
+    /**
+     * The hosts that have downloads in the queue or being executed.
+     */
+    public Set<String> hosts() {
+        return mQueue.hosts();
+    }
+
     /**
      * Cancel all requests and stop all dispatchers in the queue.
      */
     public void stop() {
         cancelAll();
+        quitDispatchers();
+    }
+
+    /**
+     * <p>
+     * Stop accepting downloads and stop all dispatchers after the downloads finish, the downloads added later fail with
+     * {@link QueueShutdownError}. It blocks until the downloads finish or the timeout elapses, the downloads still
+     * being executed then are canceled.
+     * </p>
+     * The queue can be started again by {@link #start()}, the returned downloads can be added to it or another queue,
+     * their listeners have not been called.
+     *
+     * @param timeout        the time to wait in milliseconds.
+     * @param isFinishQueued true to execute the downloads waiting in the queue, false to only wait for the downloads
+     *                       being executed.
+     * @return the downloads that were not executed.
+     */
+    public List<DownloadRequest> shutdown(long timeout, boolean isFinishQueued) {
+        List<Work<? extends DownloadRequest>> left = new ArrayList<>();
+        synchronized (mDispatchers) {
+            isShutdown = true;
+            if (!isFinishQueued) left.addAll(mQueue.drain());
+            else if (isStarted) spawn(Math.min(mPoolSize, mDispatchers.size() + mQueue.size()));
+        }
+
+        boolean isEmpty;
+        try {
+            isEmpty = mQueue.awaitEmpty(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            isEmpty = false;
+        }
+        if (!isEmpty) left.addAll(mQueue.drain());
+
+        List<DownloadRequest> requests = new ArrayList<>(left.size());
+        for (Work<? extends DownloadRequest> work : left) {
+            requests.add(takeBack(work));
+        }
+        if (!isEmpty) {
+            Logger.w("The queue is not empty in " + timeout + "ms, cancel the downloads being executed.");
+            cancelAll();
+        }
+        quitDispatchers();
+        // The downloads added while the dispatchers were quitting.
+        for (Work<? extends DownloadRequest> work : mQueue.drain()) {
+            requests.add(takeBack(work));
+        }
+        return requests;
+    }
 
-        for (DownloadDispatcher dispatcher : mDispatchers) {
-            if (dispatcher != null) {
+    /**
+     * Whether the queue has been shut down and not started again.
+     */
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    /**
+     * Take the work that has not been executed out of the queue.
+     */
+    private DownloadRequest takeBack(Work<? extends DownloadRequest> work) {
+        DownloadRequest request = work.getRequest();
+        mCancelerManager.removeCancel(request);
+        request.setCancelable(null);
+        work.discard();
+        return request;
+    }
+
+    private void quitDispatchers() {
+        synchronized (mDispatchers) {
+            isStarted = false;
+            for (DownloadDispatcher dispatcher : mDispatchers) {
                 dispatcher.quit();
             }
+            mDispatchers.clear();
         }
     }
 
@@ -139,16 +416,21 @@ public class DownloadQueue {
       implements DownloadListener {
 
         private final DownloadListener mCallback;
-        private BlockingQueue<Work<? extends DownloadRequest>> mQueue;
+        /**
+         * The download ends once, it may be ended by the downloader, or by the deadline or the cancel of the work.
+         */
+        private final AtomicBoolean isFinished = new AtomicBoolean();
+        private WorkQueue<Work<? extends DownloadRequest>> mQueue;
         private Work<? extends DownloadRequest> mWork;
         private CancelerManager mCancelerManager;
         private DownloadRequest mRequest;
+        private Delivery mDelivery;
 
         public AsyncCallback(DownloadListener callback) {
             this.mCallback = callback;
         }
 
-        public void setQueue(BlockingQueue<Work<? extends DownloadRequest>> queue) {
+        public void setQueue(WorkQueue<Work<? extends DownloadRequest>> queue) {
             mQueue = queue;
         }
 
@@ -156,6 +438,10 @@ public class DownloadQueue {
             mWork = work;
         }
 
+        public void setDelivery(Delivery delivery) {
+            mDelivery = delivery;
+        }
+
         public void setCancelerManager(CancelerManager cancelerManager) {
             mCancelerManager = cancelerManager;
         }
@@ -166,8 +452,9 @@ public class DownloadQueue {
 
         @Override
         public void onDownloadError(final int what, final Exception exception) {
+            if (!isFinished.compareAndSet(false, true)) return;
             removeRequest();
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onDownloadError(what, exception);
@@ -178,7 +465,7 @@ public class DownloadQueue {
         @Override
         public void onStart(final int what, final boolean isResume, final long rangeSize,
                             final Headers headers, final long allCount) {
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onStart(what, isResume, rangeSize, headers, allCount);
@@ -188,7 +475,7 @@ public class DownloadQueue {
 
         @Override
         public void onProgress(final int what, final int progress, final long fileCount, final long speed) {
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onProgress(what, progress, fileCount, speed);
@@ -198,8 +485,9 @@ public class DownloadQueue {
 
         @Override
         public void onFinish(final int what, final String filePath) {
+            if (!isFinished.compareAndSet(false, true)) return;
             removeRequest();
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onFinish(what, filePath);
@@ -209,8 +497,9 @@ public class DownloadQueue {
 
         @Override
         public void onCancel(final int what) {
+            if (!isFinished.compareAndSet(false, true)) return;
             removeRequest();
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onCancel(what);
@@ -220,9 +509,11 @@ public class DownloadQueue {
 
         private void removeRequest() {
             mCancelerManager.removeCancel(mRequest);
-            if (mQueue.contains(mWork)) {
-                mQueue.remove(mWork);
-            }
+            mQueue.remove(mWork);
+        }
+
+        private void post(Runnable runnable) {
+            mDelivery.post(runnable);
         }
     }
 
@@ -40,6 +40,12 @@ public enum SyncDownloadExecutor {
      */
     public void execute(int what, DownloadRequest downloadRequest, DownloadListener listener)
       throws Exception {
-        mDownloader.download(what, downloadRequest, listener);
+        // The deadline started by the queue is reset by it.
+        boolean isStarted = downloadRequest.getRemainingTime() != Long.MAX_VALUE;
+        try {
+            mDownloader.download(what, downloadRequest, listener);
+        } finally {
+            if (!isStarted) downloadRequest.resetDeadline();
+        }
     }
 }
@@ -15,27 +15,42 @@
  */
 package com.yanzhenjie.nohttp.download;
 
-import com.yanzhenjie.nohttp.Priority;
-import com.yanzhenjie.nohttp.able.Cancelable;
+import android.os.SystemClock;
 
+import com.yanzhenjie.nohttp.able.Schedulable;
+import com.yanzhenjie.nohttp.error.TimeoutError;
+
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by YanZhenjie on 2018/2/13.
  */
 final class Work<T extends DownloadRequest>
   extends FutureTask<Void>
-  implements Cancelable, Comparable<Work<? extends DownloadRequest>> {
+  implements Schedulable {
+
+    private static final Timer DEADLINE_TIMER = new Timer("NoHttp Download Deadline", true);
+    /**
+     * The canceled deadlines stay in the timer until it is purged, it is purged every so many cancels.
+     */
+    private static final int PURGE_INTERVAL = 32;
+    private static final AtomicInteger CANCELED = new AtomicInteger();
 
     private Worker<T> mWorker;
     private final int mWhat;
     private final DownloadListener mCallback;
 
     private int mSequence;
+    private final long mAddTime = SystemClock.elapsedRealtime();
 
-    private Object mLock;
+    private boolean isExecuted;
+    private Thread mRunner;
+    private volatile TimerTask mDeadlineTask;
 
     public Work(Worker<T> worker, int what, final DownloadListener callback) {
         super(worker);
@@ -44,26 +59,92 @@ final class Work<T extends DownloadRequest>
         this.mCallback = callback;
     }
 
-    public void setLock(Object lock) {
-        if (mLock != null) throw new IllegalStateException("The lock has been set.");
-        this.mLock = lock;
-    }
-
     public void setSequence(int sequence) {
         mSequence = sequence;
     }
 
+    @Override
+    public int getSequence() {
+        return mSequence;
+    }
+
+    @Override
+    public long getAddTime() {
+        return mAddTime;
+    }
+
+    /**
+     * Fail the work that has not been executed, such as it is rejected by the queue.
+     */
+    public void fail(Exception e) {
+        setException(e);
+    }
+
+    /**
+     * Start the deadline of the request, the work fails with {@link TimeoutError} when it expires, whether it is
+     * waiting in the queue or being executed.
+     */
+    public void startDeadline() {
+        T request = mWorker.getRequest();
+        request.startDeadline();
+        long remaining = request.getRemainingTime();
+        if (remaining == Long.MAX_VALUE) return;
+
+        mDeadlineTask = new TimerTask() {
+            @Override
+            public void run() {
+                expire();
+            }
+        };
+        DEADLINE_TIMER.schedule(mDeadlineTask, Math.max(0, remaining));
+    }
+
+    private void expire() {
+        fail(new TimeoutError("The deadline of the download expired: " + mWorker.getRequest().url() + "."));
+        // Close the network of the download being executed, the deadline is kept until the execution returns.
+        synchronized (this) {
+            if (mRunner != null) mWorker.getRequest().abort();
+        }
+    }
+
+    /**
+     * Give up the work that has not been executed without any callback, such as it is taken back from the queue.
+     */
+    public void discard() {
+        cancelDeadline();
+        mWorker.getRequest().resetDeadline();
+    }
+
+    private void cancelDeadline() {
+        TimerTask task = mDeadlineTask;
+        if (task != null && task.cancel() && CANCELED.incrementAndGet() % PURGE_INTERVAL == 0)
+            DEADLINE_TIMER.purge();
+    }
+
     @Override
     public void run() {
-        if (mLock == null) throw new IllegalStateException("The lock is null.");
-        synchronized (mLock) {
+        synchronized (this) {
+            if (isDone() || isExecuted) return;
+            isExecuted = true;
+            mRunner = Thread.currentThread();
+        }
+        try {
             super.run();
-            mLock.notify();
+        } finally {
+            synchronized (this) {
+                mRunner = null;
+                mWorker.getRequest().resetDeadline();
+            }
         }
     }
 
     @Override
     protected void done() {
+        cancelDeadline();
+        // The download being executed keeps its deadline until the execution returns.
+        synchronized (this) {
+            if (!isExecuted) mWorker.getRequest().resetDeadline();
+        }
         try {
             get();
         } catch (CancellationException e) {
@@ -86,6 +167,11 @@ final class Work<T extends DownloadRequest>
         }
     }
 
+    @Override
+    public T getRequest() {
+        return mWorker.getRequest();
+    }
+
     @Override
     public void cancel() {
         cancel(true);
@@ -95,13 +181,4 @@ final class Work<T extends DownloadRequest>
     public boolean isCanceled() {
         return isCancelled();
     }
-
-    @Override
-    public int compareTo(Work<? extends DownloadRequest> o) {
-        DownloadRequest mr = mWorker.getRequest();
-        DownloadRequest or = o.mWorker.getRequest();
-        final Priority me = mr.getPriority();
-        final Priority it = or.getPriority();
-        return me == it ? mSequence - o.mSequence : it.ordinal() - me.ordinal();
-    }
 }
\ No newline at end of file
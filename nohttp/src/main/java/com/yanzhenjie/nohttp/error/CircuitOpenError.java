@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.error;
+
+/**
+ * <p>The circuit of the host is open because it keeps failing, the request fails without being sent.</p>
+ */
+public class CircuitOpenError extends Exception {
+
+    private static final long serialVersionUID = 2746183L;
+
+    public CircuitOpenError() {
+    }
+
+    public CircuitOpenError(String detailMessage) {
+        super(detailMessage);
+    }
+
+    public CircuitOpenError(String detailMessage, Throwable throwable) {
+        super(detailMessage, throwable);
+    }
+
+    public CircuitOpenError(Throwable throwable) {
+        super(throwable);
+    }
+}
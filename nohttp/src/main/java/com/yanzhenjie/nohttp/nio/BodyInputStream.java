@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * <p>
+ * The response body filled by the selector thread and read by the caller.
+ * </p>
+ * When too much is buffered, the reading of the socket is paused until the caller catches up.
+ */
+class BodyInputStream
+  extends InputStream {
+
+    static final int HIGH_WATER = 256 * 1024;
+    private static final int LOW_WATER = 64 * 1024;
+
+    private final Exchange mExchange;
+
+    private final ArrayDeque<byte[]> mChunks = new ArrayDeque<>();
+    private int mPosition;
+    private int mBuffered;
+    private boolean isFinished;
+    private boolean isClosed;
+    private boolean isPaused;
+    private IOException mException;
+
+    BodyInputStream(Exchange exchange) {
+        this.mExchange = exchange;
+    }
+
+    /**
+     * Called on the selector thread.
+     *
+     * @return true if the reading should be paused.
+     */
+    synchronized boolean write(byte[] data) {
+        if (isClosed) return false;
+        mChunks.offer(data);
+        mBuffered += data.length;
+        notifyAll();
+        if (mBuffered >= HIGH_WATER) isPaused = true;
+        return isPaused;
+    }
+
+    synchronized void finish() {
+        isFinished = true;
+        notifyAll();
+    }
+
+    synchronized void fail(IOException e) {
+        if (isFinished) return;
+        mException = e;
+        notifyAll();
+    }
+
+    synchronized boolean isFinished() {
+        return isFinished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int count = read(one, 0, 1);
+        return count == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        int count = 0;
+        boolean resume = false;
+        synchronized (this) {
+            if (isClosed) throw new IOException("The stream is closed.");
+            try {
+                while (mChunks.isEmpty() && !isFinished && mException == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (mChunks.isEmpty()) {
+                if (mException != null) throw mException;
+                return -1;
+            }
+
+            while (count < length && !mChunks.isEmpty()) {
+                byte[] chunk = mChunks.peek();
+                int n = Math.min(length - count, chunk.length - mPosition);
+                System.arraycopy(chunk, mPosition, buffer, offset + count, n);
+                count += n;
+                mPosition += n;
+                if (mPosition == chunk.length) {
+                    mChunks.poll();
+                    mPosition = 0;
+                }
+            }
+            mBuffered -= count;
+            if (isPaused && mBuffered <= LOW_WATER) {
+                isPaused = false;
+                resume = true;
+            }
+        }
+        if (resume) mExchange.resumeReading();
+        return count;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+        return mBuffered;
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean abort;
+        synchronized (this) {
+            if (isClosed) return;
+            isClosed = true;
+            abort = !isFinished;
+            mChunks.clear();
+            mBuffered = 0;
+            notifyAll();
+        }
+        // The rest of the body is not read, the connection can not be reused.
+        if (abort) mExchange.cancel();
+    }
+}
@@ -0,0 +1,552 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.nio;
+
+import com.yanzhenjie.nohttp.AsyncNetworkExecutor;
+import com.yanzhenjie.nohttp.BasicRequest;
+import com.yanzhenjie.nohttp.Headers;
+import com.yanzhenjie.nohttp.Logger;
+import com.yanzhenjie.nohttp.NoHttp;
+import com.yanzhenjie.nohttp.RequestMethod;
+import com.yanzhenjie.nohttp.able.Cancelable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * One request and its response on a {@link NioConnection}.
+ * </p>
+ * The host is resolved and the request is serialized by {@link #prepare(BasicRequest)} before the exchange is
+ * dispatched, the response is parsed on the selector thread.
+ */
+class Exchange
+  implements Cancelable {
+
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final int STATE_HEADERS = 0;
+    private static final int STATE_BODY = 1;
+    private static final int STATE_DONE = 2;
+
+    private static final int CHUNK_SIZE = 0;
+    private static final int CHUNK_DATA = 1;
+    private static final int CHUNK_END = 2;
+    private static final int CHUNK_TRAILER = 3;
+
+    private final NioNetworkExecutor mExecutor;
+    private final AsyncNetworkExecutor.Callback mCallback;
+    private final URL mUrl;
+    private final String mRoute;
+    private final int mPort;
+    private final boolean isHead;
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+
+    // The following are set by prepare() before the exchange is dispatched.
+    private List<InetSocketAddress> mAddresses;
+    private ByteBuffer mRequestBuffer;
+    private boolean isCloseRequested;
+    private boolean isConnectOnly;
+
+    private final AtomicBoolean isDelivered = new AtomicBoolean();
+    private volatile boolean isCanceled;
+    private volatile Reactor mReactor;
+
+    // The following are only accessed on the selector thread.
+    private NioConnection mConnection;
+    /**
+     * The connections being connected to the addresses, the first one connected is attached.
+     */
+    private final List<NioConnection> mAttempts = new ArrayList<>();
+    private int mNextAddress;
+    private boolean isReceived;
+    private int mState;
+    private ByteArrayOutputStream mHeaderBuffer;
+    private boolean isKeepAlive;
+    private boolean isChunked;
+    private int mChunkState;
+    private StringBuilder mChunkLine;
+    /**
+     * Bytes left of the body or of the current chunk, -1 means until the end of the stream.
+     */
+    private long mRemaining;
+    private BodyInputStream mBody;
+
+    Exchange(NioNetworkExecutor executor, BasicRequest<?> request, AsyncNetworkExecutor.Callback callback) throws
+      IOException {
+        this.mExecutor = executor;
+        this.mCallback = callback;
+        this.mConnectTimeout = request.getConnectTimeout();
+        this.mReadTimeout = request.getReadTimeout();
+
+        this.mUrl = new URL(request.url());
+        this.mPort = mUrl.getPort() == -1 ? mUrl.getDefaultPort() : mUrl.getPort();
+        this.mRoute = mUrl.getHost() + ":" + mPort;
+        this.isHead = request.getRequestMethod() == RequestMethod.HEAD;
+    }
+
+    /**
+     * Resolve the host and serialize the request, it may block, so it is not called on the selector thread.
+     */
+    void prepare(BasicRequest<?> request) throws IOException {
+        String host = mUrl.getHost();
+        List<InetAddress> addresses = NoHttp.getInitializeConfig().getDns().lookup(host);
+        List<InetSocketAddress> socketAddresses = new ArrayList<>(addresses.size());
+        for (InetAddress address : addresses) {
+            socketAddresses.add(new InetSocketAddress(address, mPort));
+        }
+
+        RequestMethod method = request.getRequestMethod();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (method.allowRequestBody()) request.onWriteRequestBody(body);
+
+        String file = mUrl.getFile();
+        StringBuilder builder = new StringBuilder();
+        builder.append(method.getValue()).append(' ').append(file.length() == 0 ? "/" : file).append(" HTTP/1.1\r\n");
+        Map<String, String> headers = request.getHeaders().toRequestHeaders();
+        if (!headers.containsKey("Host"))
+            builder.append("Host: ").append(mUrl.getPort() == -1 ? host : mRoute).append("\r\n");
+        boolean close = false;
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (Headers.HEAD_KEY_CONTENT_LENGTH.equalsIgnoreCase(key)) continue;
+            if (Headers.HEAD_KEY_CONNECTION.equalsIgnoreCase(key))
+                close = Headers.HEAD_VALUE_CONNECTION_CLOSE.equalsIgnoreCase(value);
+            Logger.i(key + ": " + value);
+            builder.append(key).append(": ").append(value).append("\r\n");
+        }
+        if (method.allowRequestBody())
+            builder.append(Headers.HEAD_KEY_CONTENT_LENGTH).append(": ").append(body.size()).append("\r\n");
+        builder.append("\r\n");
+
+        byte[] head = builder.toString().getBytes("ISO-8859-1");
+        ByteBuffer buffer = ByteBuffer.allocate(head.length + body.size());
+        buffer.put(head);
+        buffer.put(body.toByteArray());
+        buffer.flip();
+
+        this.mAddresses = socketAddresses;
+        this.mRequestBuffer = buffer;
+        this.isCloseRequested = close;
+    }
+
+    /**
+     * Only open the connection and put it into the pool, the request is not sent, called before the exchange is
+     * dispatched.
+     */
+    void connectOnly() {
+        this.isConnectOnly = true;
+    }
+
+    boolean isConnectOnly() {
+        return isConnectOnly;
+    }
+
+    String route() {
+        return mRoute;
+    }
+
+    /**
+     * Connect from the first address again, called on the selector thread.
+     */
+    void rewindAddresses() {
+        mNextAddress = 0;
+    }
+
+    boolean hasNextAddress() {
+        return mNextAddress < mAddresses.size();
+    }
+
+    InetSocketAddress nextAddress() {
+        return mAddresses.get(mNextAddress++);
+    }
+
+    int addressSize() {
+        return mAddresses.size();
+    }
+
+    void addAttempt(NioConnection connection) {
+        mAttempts.add(connection);
+    }
+
+    /**
+     * The connection failed to connect, called on the selector thread.
+     *
+     * @return whether other connections are still connecting.
+     */
+    boolean removeAttempt(NioConnection connection) {
+        mAttempts.remove(connection);
+        if (connection.exchange == this) connection.exchange = null;
+        return !mAttempts.isEmpty();
+    }
+
+    /**
+     * Close the connections still connecting, called on the selector thread.
+     */
+    void closeAttempts() {
+        for (NioConnection attempt : mAttempts) {
+            if (attempt.exchange == this) attempt.exchange = null;
+            attempt.reactor.close(attempt);
+        }
+        mAttempts.clear();
+    }
+
+    int connectTimeout() {
+        return mConnectTimeout;
+    }
+
+    int readTimeout() {
+        return mReadTimeout;
+    }
+
+    ByteBuffer requestBuffer() {
+        return mRequestBuffer;
+    }
+
+    void dispatchTo(Reactor reactor) {
+        this.mReactor = reactor;
+    }
+
+    Reactor reactor() {
+        return mReactor;
+    }
+
+    /**
+     * The exchange can not be executed, such as the selector thread quit, called on any thread.
+     */
+    void abort(Exception e) {
+        isCanceled = true;
+        mExecutor.remove(this);
+        if (isDelivered.compareAndSet(false, true)) mCallback.onFailure(e);
+        else if (mBody != null) mBody.fail(e instanceof IOException ? (IOException)e : new IOException(e));
+    }
+
+    void attach(NioConnection connection) {
+        // The other connections lost the race.
+        mAttempts.remove(connection);
+        closeAttempts();
+        this.mConnection = connection;
+        this.mReactor = connection.reactor;
+    }
+
+    /**
+     * The response data, called on the selector thread.
+     */
+    void onData(ByteBuffer buffer) throws IOException {
+        isReceived = true;
+        while (buffer.hasRemaining() && mState != STATE_DONE) {
+            if (mState == STATE_HEADERS) readHeaders(buffer);
+            else readBody(buffer);
+        }
+        // Bytes after the response mean the connection is out of step, it can not be reused.
+        if (mState == STATE_DONE) complete(!buffer.hasRemaining());
+    }
+
+    /**
+     * The server closed the connection, called on the selector thread.
+     */
+    void onEof() {
+        if (mState == STATE_BODY && !isChunked && mRemaining == -1) {
+            mState = STATE_DONE;
+            complete(false);
+        } else {
+            onIOException(new EOFException("Unexpected end of stream: " + mRoute + "."));
+        }
+    }
+
+    /**
+     * The connection failed, called on the selector thread.
+     */
+    void onIOException(IOException e) {
+        if (mState == STATE_DONE) return;
+        closeAttempts();
+        NioConnection connection = release();
+        if (connection != null) connection.reactor.close(connection);
+
+        // A pooled connection may have been closed by the server before the request, try a new one.
+        if (!isCanceled && connection != null && connection.isReused && !isReceived &&
+          !(e instanceof SocketTimeoutException)) {
+            mRequestBuffer.rewind();
+            mExecutor.dispatch(this, false);
+            return;
+        }
+        fail(e);
+    }
+
+    /**
+     * The reader caught up with the body, called on any thread.
+     */
+    void resumeReading() {
+        final Reactor reactor = mReactor;
+        if (reactor == null) return;
+        reactor.post(new Runnable() {
+            @Override
+            public void run() {
+                NioConnection connection = mConnection;
+                if (connection != null && connection.reactor == reactor) reactor.resumeReading(connection);
+            }
+        });
+    }
+
+    @Override
+    public void cancel() {
+        if (isCanceled) return;
+        isCanceled = true;
+        mExecutor.remove(this);
+        IOException canceled = new IOException("The request is canceled: " + mRoute + ".");
+        if (isDelivered.compareAndSet(false, true)) mCallback.onFailure(canceled);
+
+        final Reactor reactor = mReactor;
+        if (reactor == null) return;
+        reactor.post(new Runnable() {
+            @Override
+            public void run() {
+                Reactor current = mReactor;
+                if (current != reactor) {
+                    current.post(this);
+                } else if (mState != STATE_DONE) {
+                    mState = STATE_DONE;
+                    closeAttempts();
+                    NioConnection connection = release();
+                    if (connection != null) connection.reactor.close(connection);
+                    if (mBody != null) mBody.fail(new IOException("The request is canceled: " + mRoute + "."));
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return isCanceled;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return isCanceled;
+    }
+
+    private void readHeaders(ByteBuffer buffer) throws IOException {
+        if (mHeaderBuffer == null) mHeaderBuffer = new ByteArrayOutputStream(1024);
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            mHeaderBuffer.write(b);
+            if (b == '\n' && endsWithBlankLine()) {
+                String text = mHeaderBuffer.toString("ISO-8859-1");
+                mHeaderBuffer = null;
+                parseHeaders(text);
+                return;
+            }
+            if (mHeaderBuffer.size() > MAX_HEADER_SIZE)
+                throw new ProtocolException("The response headers are too large: " + mRoute + ".");
+        }
+    }
+
+    private boolean endsWithBlankLine() {
+        int size = mHeaderBuffer.size();
+        if (size < 2) return false;
+        byte[] data = mHeaderBuffer.toByteArray();
+        if (data[size - 2] == '\n') return true;
+        return size >= 4 && data[size - 2] == '\r' && data[size - 3] == '\n';
+    }
+
+    private void parseHeaders(String text) throws IOException {
+        String[] lines = text.split("\r?\n");
+        String statusLine = lines[0];
+        String[] status = statusLine.split(" ", 3);
+        if (status.length < 2 || !status[0].startsWith("HTTP/"))
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        int code;
+        try {
+            code = Integer.parseInt(status[1]);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        }
+        // Skip the interim responses, such as 100 Continue.
+        if (100 <= code && code < 200 && code != 101) return;
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            int index = line.indexOf(':');
+            if (index <= 0) continue;
+            String key = line.substring(0, index).trim();
+            String value = line.substring(index + 1).trim();
+            List<String> values = headers.get(key);
+            if (values == null) {
+                values = new ArrayList<>(1);
+                headers.put(key, values);
+            }
+            values.add(value);
+        }
+
+        String connection = first(headers, Headers.HEAD_KEY_CONNECTION);
+        if ("HTTP/1.0".equals(status[0]))
+            isKeepAlive = Headers.HEAD_VALUE_CONNECTION_KEEP_ALIVE.equalsIgnoreCase(connection);
+        else isKeepAlive = !Headers.HEAD_VALUE_CONNECTION_CLOSE.equalsIgnoreCase(connection);
+        if (isCloseRequested) isKeepAlive = false;
+
+        mBody = new BodyInputStream(this);
+        String transferEncoding = first(headers, "Transfer-Encoding");
+        String contentLength = first(headers, Headers.HEAD_KEY_CONTENT_LENGTH);
+        if (isHead || code < 200 || code == 204 || code == 304) {
+            mState = STATE_DONE;
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            isChunked = true;
+            mChunkState = CHUNK_SIZE;
+            mChunkLine = new StringBuilder();
+            mState = STATE_BODY;
+        } else if (contentLength != null) {
+            try {
+                mRemaining = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Unexpected Content-Length: " + contentLength);
+            }
+            mState = mRemaining == 0 ? STATE_DONE : STATE_BODY;
+        } else {
+            mRemaining = -1;
+            isKeepAlive = false;
+            mState = STATE_BODY;
+        }
+        if (mState == STATE_DONE) mBody.finish();
+
+        NioNetwork network = new NioNetwork(code, headers, mBody);
+        if (isDelivered.compareAndSet(false, true)) mCallback.onResponse(network);
+        else mBody.close();
+    }
+
+    private static String first(Map<String, List<String>> headers, String key) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (key.equalsIgnoreCase(entry.getKey())) return entry.getValue().get(0);
+        }
+        return null;
+    }
+
+    private void readBody(ByteBuffer buffer) throws IOException {
+        if (!isChunked) {
+            int count = mRemaining == -1 ? buffer.remaining() : (int)Math.min(mRemaining, buffer.remaining());
+            deliver(buffer, count);
+            if (mRemaining != -1) {
+                mRemaining -= count;
+                if (mRemaining == 0) mState = STATE_DONE;
+            }
+            return;
+        }
+
+        switch (mChunkState) {
+            case CHUNK_SIZE: {
+                if (!readLine(buffer)) return;
+                String line = mChunkLine.toString();
+                mChunkLine.setLength(0);
+                int extension = line.indexOf(';');
+                if (extension != -1) line = line.substring(0, extension);
+                try {
+                    mRemaining = Long.parseLong(line.trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Unexpected chunk size: " + line);
+                }
+                mChunkState = mRemaining == 0 ? CHUNK_TRAILER : CHUNK_DATA;
+                break;
+            }
+            case CHUNK_DATA: {
+                int count = (int)Math.min(mRemaining, buffer.remaining());
+                deliver(buffer, count);
+                mRemaining -= count;
+                if (mRemaining == 0) mChunkState = CHUNK_END;
+                break;
+            }
+            case CHUNK_END: {
+                if (!readLine(buffer)) return;
+                mChunkLine.setLength(0);
+                mChunkState = CHUNK_SIZE;
+                break;
+            }
+            case CHUNK_TRAILER: {
+                if (!readLine(buffer)) return;
+                boolean blank = mChunkLine.length() == 0;
+                mChunkLine.setLength(0);
+                if (blank) mState = STATE_DONE;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Read a line into the chunk line without the line terminator.
+     *
+     * @return true if the line is complete.
+     */
+    private boolean readLine(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            char c = (char)(buffer.get() & 0xFF);
+            if (c == '\n') return true;
+            if (c != '\r') mChunkLine.append(c);
+        }
+        return false;
+    }
+
+    private void deliver(ByteBuffer buffer, int count) {
+        if (count == 0) return;
+        byte[] data = new byte[count];
+        buffer.get(data);
+        if (mBody.write(data) && mConnection != null) mConnection.reactor.pauseReading(mConnection);
+    }
+
+    /**
+     * The connection opened for the pool is connected, called on the selector thread.
+     */
+    void pool() {
+        mState = STATE_DONE;
+        mExecutor.remove(this);
+        NioConnection connection = release();
+        if (connection != null) connection.reactor.finish(connection, !isCanceled);
+        if (isDelivered.compareAndSet(false, true)) mCallback.onResponse(null);
+    }
+
+    private void complete(boolean reusable) {
+        mExecutor.remove(this);
+        mBody.finish();
+        NioConnection connection = release();
+        if (connection != null) connection.reactor.finish(connection, reusable && isKeepAlive && !isCanceled);
+    }
+
+    private void fail(IOException e) {
+        mState = STATE_DONE;
+        mExecutor.remove(this);
+        if (isDelivered.compareAndSet(false, true)) mCallback.onFailure(e);
+        else if (mBody != null) mBody.fail(e);
+    }
+
+    private NioConnection release() {
+        NioConnection connection = mConnection;
+        mConnection = null;
+        if (connection != null && connection.exchange == this) connection.exchange = null;
+        return connection;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.nio;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>A socket registered on a {@link Reactor}, it is idle in the pool or busy with an {@link Exchange}.</p>
+ */
+class NioConnection {
+
+    final SocketChannel channel;
+    final Reactor reactor;
+    final String route;
+    SelectionKey key;
+
+    /**
+     * The exchange using this connection, null if the connection is idle.
+     */
+    Exchange exchange;
+    /**
+     * The time of the timeout of the exchange, or the expiry of the idle connection, 0 means never.
+     */
+    long deadline;
+    /**
+     * Whether it has been used by a previous exchange.
+     */
+    boolean isReused;
+    /**
+     * Whether it is connecting for the exchange, and has not been attached.
+     */
+    boolean isConnecting;
+    /**
+     * The time to race the next address if it is still connecting, 0 means never.
+     */
+    long fallback;
+
+    NioConnection(SocketChannel channel, Reactor reactor, String route) {
+        this.channel = channel;
+        this.reactor = reactor;
+        this.route = route;
+    }
+}
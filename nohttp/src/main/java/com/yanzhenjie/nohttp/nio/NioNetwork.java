@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.nio;
+
+import com.yanzhenjie.nohttp.Headers;
+import com.yanzhenjie.nohttp.Network;
+import com.yanzhenjie.nohttp.tools.HeaderUtils;
+import com.yanzhenjie.nohttp.tools.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>The response of an {@link Exchange}, the request body has been sent with the request headers.</p>
+ */
+class NioNetwork
+  implements Network {
+
+    private final int mResponseCode;
+    private final Map<String, List<String>> mResponseHeaders;
+    private final BodyInputStream mBody;
+
+    NioNetwork(int responseCode, Map<String, List<String>> responseHeaders, BodyInputStream body) {
+        this.mResponseCode = responseCode;
+        this.mResponseHeaders = responseHeaders;
+        this.mBody = body;
+    }
+
+    /**
+     * The body has been written by the executor.
+     *
+     * @return null.
+     */
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return null;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        return mResponseCode;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return mResponseHeaders;
+    }
+
+    @Override
+    public InputStream getServerStream(int responseCode, Headers headers) throws IOException {
+        if (HeaderUtils.isGzipContent(headers.getContentEncoding())) return new GZIPInputStream(mBody);
+        return mBody;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOUtils.closeQuietly(mBody);
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.nio;
+
+import com.yanzhenjie.nohttp.AsyncNetworkExecutor;
+import com.yanzhenjie.nohttp.BasicRequest;
+import com.yanzhenjie.nohttp.Network;
+import com.yanzhenjie.nohttp.NetworkExecutor;
+import com.yanzhenjie.nohttp.Preconnectable;
+import com.yanzhenjie.nohttp.URLConnectionNetworkExecutor;
+import com.yanzhenjie.nohttp.able.Cancelable;
+import com.yanzhenjie.nohttp.tools.IOUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A selector-driven HTTP/1.1 executor, all the connections are handled by a few selector threads and idle
+ * connections are kept alive for reuse.
+ * </p>
+ * Only the callers of the {@link AsyncNetworkExecutor} do not hold a thread while waiting for the server. When it is
+ * set as the {@link NetworkExecutor} by {@code InitializationConfig.Builder#networkExecutor}, which is how the
+ * request and download queues use it, the calling thread blocks until the response headers arrive and while it reads
+ * the body, as with the other executors.
+ * <p>
+ * Plain http requests without a proxy are executed by the selector threads, the others are executed by the fallback
+ * {@link NetworkExecutor} on a bounded pool. The request body is buffered in memory before it is sent.
+ * </p>
+ */
+public class NioNetworkExecutor
+  implements NetworkExecutor, AsyncNetworkExecutor, Preconnectable {
+
+    /**
+     * The time an idle connection is kept in the pool.
+     */
+    static final int KEEP_ALIVE = 5 * 60 * 1000;
+    private static final int MAX_IDLE_PER_ROUTE = 5;
+    /**
+     * The maximum number of threads resolving the hosts and executing the fallback requests of the asynchronous
+     * calls, the others wait.
+     */
+    private static final int MAX_BLOCKING_THREADS = 8;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "NoHttp NIO Worker #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final Executor BLOCKING_EXECUTOR = newBlockingExecutor();
+
+    private static final Cancelable FINISHED = new Cancelable() {
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    private final Reactor[] mReactors;
+    private final AtomicInteger mNext = new AtomicInteger();
+    private final NetworkExecutor mFallback;
+    private final Map<String, ArrayDeque<NioConnection>> mIdle = new HashMap<>();
+    /**
+     * The exchanges dispatched to the selector threads and not finished.
+     */
+    private final Set<Exchange> mExchanges = Collections.newSetFromMap(new ConcurrentHashMap<Exchange, Boolean>());
+
+    /**
+     * Create an executor with two selector threads.
+     */
+    public NioNetworkExecutor() {
+        this(2);
+    }
+
+    /**
+     * @param threadSize the number of the selector threads.
+     */
+    public NioNetworkExecutor(int threadSize) {
+        this(threadSize, new URLConnectionNetworkExecutor());
+    }
+
+    /**
+     * @param threadSize the number of the selector threads.
+     * @param fallback   executes the https requests and the requests through a proxy.
+     */
+    public NioNetworkExecutor(int threadSize, NetworkExecutor fallback) {
+        if (threadSize <= 0) throw new IllegalArgumentException("The threadSize must be greater than 0.");
+        this.mFallback = fallback;
+        this.mReactors = new Reactor[threadSize];
+        try {
+            for (int i = 0; i < threadSize; i++) {
+                mReactors[i] = new Reactor(this);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not open the selector.", e);
+        }
+        for (Reactor reactor : mReactors) {
+            reactor.start();
+        }
+    }
+
+    private static Executor newBlockingExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_BLOCKING_THREADS, MAX_BLOCKING_THREADS, 60,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Execute the request and wait for the response headers on the calling thread, the host is resolved and the
+     * request body is buffered on the calling thread too.
+     */
+    @Override
+    public Network execute(BasicRequest<?> request) throws Exception {
+        if (!isSupported(request)) return mFallback.execute(request);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Network[] network = new Network[1];
+        final Exception[] exception = new Exception[1];
+        Exchange exchange = new Exchange(this, request, new Callback() {
+            @Override
+            public void onResponse(Network result) {
+                network[0] = result;
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                exception[0] = e;
+                latch.countDown();
+            }
+        });
+        exchange.prepare(request);
+        dispatch(exchange, true);
+
+        long timeout = awaitTimeout(request, exchange);
+        boolean isCompleted;
+        try {
+            if (timeout > 0) {
+                isCompleted = latch.await(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                latch.await();
+                isCompleted = true;
+            }
+        } catch (InterruptedException e) {
+            exchange.cancel();
+            IOUtils.closeQuietly(network[0]);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The request is interrupted: " + request.url() + ".");
+        }
+        if (!isCompleted) {
+            exchange.cancel();
+            IOUtils.closeQuietly(network[0]);
+            throw new SocketTimeoutException("Request time out: " + request.url() + ".");
+        }
+        if (exception[0] != null) throw exception[0];
+        return network[0];
+    }
+
+    /**
+     * Open a new connection to the host of the request without sending it, and put it into the pool. The https
+     * requests and the requests through a proxy are preconnected by the fallback executor.
+     */
+    @Override
+    public boolean preconnect(BasicRequest<?> request) throws Exception {
+        if (!isSupported(request))
+            return mFallback instanceof Preconnectable && ((Preconnectable) mFallback).preconnect(request);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Exception[] exception = new Exception[1];
+        Exchange exchange = new Exchange(this, request, new Callback() {
+            @Override
+            public void onResponse(Network network) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                exception[0] = e;
+                latch.countDown();
+            }
+        });
+        exchange.prepare(request);
+        exchange.connectOnly();
+        dispatch(exchange, false);
+
+        long timeout = awaitTimeout(request, exchange);
+        boolean isCompleted;
+        try {
+            if (timeout > 0) {
+                isCompleted = latch.await(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                latch.await();
+                isCompleted = true;
+            }
+        } catch (InterruptedException e) {
+            exchange.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The preconnect is interrupted: " + request.url() + ".");
+        }
+        if (!isCompleted) {
+            exchange.cancel();
+            throw new SocketTimeoutException("Connect time out: " + request.url() + ".");
+        }
+        if (exception[0] != null) throw exception[0];
+        return true;
+    }
+
+    /**
+     * The time to wait for the response headers. The selector thread fails the exchange when the connect or read
+     * timeout elapses, this bounds the wait in case it does not call back.
+     *
+     * @return 0 means waiting until the callback, the timeouts are infinite and there is no deadline.
+     */
+    private static long awaitTimeout(BasicRequest<?> request, Exchange exchange) {
+        int connectTimeout = request.getConnectTimeout();
+        int readTimeout = request.getReadTimeout();
+        long timeout = 0;
+        if (connectTimeout > 0 && readTimeout > 0) {
+            // The addresses are raced one after another, the read timeout applies to the writing and the waiting.
+            long racing = Reactor.FALLBACK_DELAY * Math.max(0, exchange.addressSize() - 1);
+            timeout = connectTimeout + racing + 2L * readTimeout;
+        }
+        long remaining = request.getRemainingTime();
+        if (remaining != Long.MAX_VALUE) {
+            remaining = Math.max(1, remaining);
+            timeout = timeout == 0 ? remaining : Math.min(timeout, remaining);
+        }
+        return timeout;
+    }
+
+    /**
+     * Execute the request without holding the calling thread, the host is resolved and the request body is buffered
+     * on the bounded pool of this executor.
+     */
+    @Override
+    public Cancelable execute(final BasicRequest<?> request, Callback callback) {
+        if (!isSupported(request)) {
+            FallbackCall call = new FallbackCall(request, callback);
+            BLOCKING_EXECUTOR.execute(call);
+            return call;
+        }
+
+        final Exchange exchange;
+        try {
+            exchange = new Exchange(this, request, callback);
+        } catch (IOException e) {
+            callback.onFailure(e);
+            return FINISHED;
+        }
+        BLOCKING_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (exchange.isCanceled()) return;
+                try {
+                    exchange.prepare(request);
+                } catch (Exception e) {
+                    exchange.abort(e);
+                    return;
+                }
+                dispatch(exchange, true);
+            }
+        });
+        return exchange;
+    }
+
+    /**
+     * Stop the selector threads, the requests in flight fail.
+     */
+    public void shutdown() {
+        for (Reactor reactor : mReactors) {
+            reactor.quit();
+        }
+        synchronized (mIdle) {
+            mIdle.clear();
+        }
+    }
+
+    private boolean isSupported(BasicRequest<?> request) {
+        Proxy proxy = request.getProxy();
+        return request.url().regionMatches(true, 0, "http://", 0, 7) &&
+          (proxy == null || proxy.type() == Proxy.Type.DIRECT);
+    }
+
+    /**
+     * Run the exchange on an idle connection, or on a new connection.
+     *
+     * @param reuse whether an idle connection can be used.
+     */
+    void dispatch(Exchange exchange, boolean reuse) {
+        mExchanges.add(exchange);
+        if (reuse) {
+            NioConnection connection;
+            while ((connection = pollIdle(exchange.route())) != null) {
+                Reactor reactor = connection.reactor;
+                if (reactor.isQuit()) continue;
+                exchange.dispatchTo(reactor);
+                // The reactor quit after it was checked, it fails the exchanges dispatched to it.
+                if (reactor.isQuit()) continue;
+                reactor.begin(connection, exchange);
+                return;
+            }
+        }
+        Reactor reactor = nextReactor();
+        if (reactor == null) {
+            exchange.abort(new IOException("The executor is shut down."));
+            return;
+        }
+        exchange.dispatchTo(reactor);
+        reactor.connect(exchange);
+    }
+
+    /**
+     * The next selector thread that is running.
+     *
+     * @return null if all of them are quit.
+     */
+    private Reactor nextReactor() {
+        for (int i = 0; i < mReactors.length; i++) {
+            Reactor reactor = mReactors[(mNext.getAndIncrement() & Integer.MAX_VALUE) % mReactors.length];
+            if (!reactor.isQuit()) return reactor;
+        }
+        return null;
+    }
+
+    /**
+     * The exchange is finished or failed.
+     */
+    void remove(Exchange exchange) {
+        mExchanges.remove(exchange);
+    }
+
+    /**
+     * The selector thread quit, fail the exchanges dispatched to it, called after it quits.
+     */
+    void abort(Reactor reactor, IOException e) {
+        for (Exchange exchange : mExchanges) {
+            if (exchange.reactor() == reactor) exchange.abort(e);
+        }
+    }
+
+    private NioConnection pollIdle(String route) {
+        synchronized (mIdle) {
+            ArrayDeque<NioConnection> connections = mIdle.get(route);
+            if (connections == null) return null;
+            NioConnection connection = connections.pollLast();
+            if (connections.isEmpty()) mIdle.remove(route);
+            return connection;
+        }
+    }
+
+    /**
+     * Put the connection into the pool.
+     *
+     * @return false if the pool of the route is full.
+     */
+    boolean addIdle(NioConnection connection) {
+        synchronized (mIdle) {
+            ArrayDeque<NioConnection> connections = mIdle.get(connection.route);
+            if (connections == null) {
+                connections = new ArrayDeque<>();
+                mIdle.put(connection.route, connections);
+            }
+            if (connections.size() >= MAX_IDLE_PER_ROUTE) return false;
+            connections.offerLast(connection);
+            return true;
+        }
+    }
+
+    /**
+     * Take the connection out of the pool.
+     *
+     * @return false if it is not in the pool, it is taken by an exchange.
+     */
+    boolean removeIdle(NioConnection connection) {
+        synchronized (mIdle) {
+            ArrayDeque<NioConnection> connections = mIdle.get(connection.route);
+            if (connections == null || !connections.remove(connection)) return false;
+            if (connections.isEmpty()) mIdle.remove(connection.route);
+            return true;
+        }
+    }
+
+    /**
+     * Execute the request with the fallback executor on the bounded pool.
+     */
+    private class FallbackCall
+      implements Runnable, Cancelable {
+
+        private final BasicRequest<?> mRequest;
+        private final Callback mCallback;
+        private final AtomicBoolean isDelivered = new AtomicBoolean();
+        private volatile boolean isCanceled;
+
+        FallbackCall(BasicRequest<?> request, Callback callback) {
+            this.mRequest = request;
+            this.mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (isCanceled) return;
+            Network network = null;
+            try {
+                network = mFallback.execute(mRequest);
+                if (mRequest.getRequestMethod().allowRequestBody()) {
+                    OutputStream outputStream = IOUtils.toBufferedOutputStream(network.getOutputStream());
+                    mRequest.onWriteRequestBody(outputStream);
+                    IOUtils.closeQuietly(outputStream);
+                }
+                network.getResponseCode();
+            } catch (Exception e) {
+                IOUtils.closeQuietly(network);
+                if (isDelivered.compareAndSet(false, true)) mCallback.onFailure(e);
+                return;
+            }
+            if (isDelivered.compareAndSet(false, true)) mCallback.onResponse(network);
+            else IOUtils.closeQuietly(network);
+        }
+
+        @Override
+        public void cancel() {
+            isCanceled = true;
+            if (isDelivered.compareAndSet(false, true))
+                mCallback.onFailure(new IOException("The request is canceled: " + mRequest.url() + "."));
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return isCanceled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCanceled;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.nio;
+
+import com.yanzhenjie.nohttp.Logger;
+import com.yanzhenjie.nohttp.tools.IOUtils;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A selector thread, it connects, writes and reads all the connections registered on it.
+ * </p>
+ * The state of the connections and exchanges is only changed on this thread, other threads post tasks to it.
+ */
+class Reactor
+  extends Thread {
+
+    private static final AtomicInteger COUNT = new AtomicInteger(1);
+    private static final long SWEEP_INTERVAL = 1000;
+    /**
+     * The time to wait for a connecting address before racing the next one.
+     */
+    static final long FALLBACK_DELAY = 250;
+
+    private final NioNetworkExecutor mExecutor;
+    private final Selector mSelector;
+    private final ConcurrentLinkedQueue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    private final Set<NioConnection> mConnections = new HashSet<>();
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocate(64 * 1024);
+
+    private volatile boolean isQuit;
+    private long mNextSweep;
+
+    Reactor(NioNetworkExecutor executor) throws IOException {
+        super("NoHttp NIO #" + COUNT.getAndIncrement());
+        setDaemon(true);
+        this.mExecutor = executor;
+        this.mSelector = Selector.open();
+    }
+
+    static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    void post(Runnable task) {
+        mTasks.offer(task);
+        mSelector.wakeup();
+    }
+
+    void quit() {
+        isQuit = true;
+        mSelector.wakeup();
+    }
+
+    /**
+     * Whether the thread is quit or died, the exchanges dispatched to it are failed.
+     */
+    boolean isQuit() {
+        return isQuit;
+    }
+
+    /**
+     * Open a new connection for the exchange.
+     */
+    void connect(final Exchange exchange) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (exchange.isCanceled()) return;
+                exchange.rewindAddresses();
+                connectNext(exchange);
+            }
+        });
+    }
+
+    /**
+     * Connect the next address of the exchange. If it does not connect in the {@link #FALLBACK_DELAY}, the address
+     * after it is connected at the same time, the first connected one is used and the others are closed.
+     */
+    private void connectNext(Exchange exchange) {
+        NioConnection connection = null;
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            connection = new NioConnection(channel, this, exchange.route());
+            mConnections.add(connection);
+            connection.exchange = exchange;
+            connection.isConnecting = true;
+            exchange.addAttempt(connection);
+            if (channel.connect(exchange.nextAddress())) {
+                connection.key = channel.register(mSelector, 0, connection);
+                onConnected(connection);
+            } else {
+                connection.key = channel.register(mSelector, SelectionKey.OP_CONNECT, connection);
+                setDeadline(connection, exchange.connectTimeout());
+                if (exchange.hasNextAddress()) {
+                    connection.fallback = now() + FALLBACK_DELAY;
+                    if (connection.fallback < mNextSweep) mNextSweep = connection.fallback;
+                }
+            }
+        } catch (IOException e) {
+            if (connection != null && connection.isConnecting) {
+                onConnectFailed(connection, e);
+            } else {
+                IOUtils.closeQuietly(channel);
+                exchange.onIOException(e);
+            }
+        }
+    }
+
+    private void onConnected(NioConnection connection) throws IOException {
+        connection.isConnecting = false;
+        connection.fallback = 0;
+        Exchange exchange = connection.exchange;
+        exchange.attach(connection);
+        if (exchange.isConnectOnly()) exchange.pool();
+        else startWriting(connection);
+    }
+
+    /**
+     * Fail over to the next address, the exchange fails if there is no address left.
+     */
+    private void onConnectFailed(NioConnection connection, IOException e) {
+        Exchange exchange = connection.exchange;
+        close(connection);
+        if (exchange == null) return;
+        boolean isRacing = exchange.removeAttempt(connection);
+        if (exchange.isCanceled()) return;
+        Logger.w("Connect " + exchange.route() + " failed: " + e.getMessage());
+        if (exchange.hasNextAddress()) connectNext(exchange);
+        else if (!isRacing) exchange.onIOException(e);
+    }
+
+    /**
+     * Reuse an idle connection for the exchange.
+     */
+    void begin(final NioConnection connection, final Exchange exchange) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (exchange.isCanceled()) {
+                    finish(connection, true);
+                    return;
+                }
+                if (!connection.channel.isOpen() || !connection.key.isValid()) {
+                    // Closed while waiting in the pool.
+                    close(connection);
+                    mExecutor.dispatch(exchange, false);
+                    return;
+                }
+                connection.exchange = exchange;
+                connection.isReused = true;
+                exchange.attach(connection);
+                try {
+                    startWriting(connection);
+                } catch (IOException e) {
+                    exchange.onIOException(e);
+                }
+            }
+        });
+    }
+
+    private void startWriting(NioConnection connection) throws IOException {
+        connection.key.interestOps(SelectionKey.OP_WRITE);
+        setDeadline(connection, connection.exchange.readTimeout());
+        write(connection);
+    }
+
+    private void write(NioConnection connection) throws IOException {
+        ByteBuffer buffer = connection.exchange.requestBuffer();
+        connection.channel.write(buffer);
+        if (!buffer.hasRemaining()) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+            setDeadline(connection, connection.exchange.readTimeout());
+        }
+    }
+
+    private void read(NioConnection connection) throws IOException {
+        mReadBuffer.clear();
+        int count = connection.channel.read(mReadBuffer);
+        Exchange exchange = connection.exchange;
+        if (exchange == null) {
+            // The idle connection is closed by the server, or sends unexpected data.
+            if (mExecutor.removeIdle(connection)) close(connection);
+            else connection.key.interestOps(0);
+            return;
+        }
+        if (count == -1) {
+            exchange.onEof();
+        } else if (count > 0) {
+            mReadBuffer.flip();
+            exchange.onData(mReadBuffer);
+            if (connection.exchange == exchange && connection.key.isValid() &&
+                (connection.key.interestOps() & SelectionKey.OP_READ) != 0) {
+                setDeadline(connection, exchange.readTimeout());
+            }
+        }
+    }
+
+    /**
+     * Stop reading the connection, the body buffer is full.
+     */
+    void pauseReading(NioConnection connection) {
+        connection.key.interestOps(0);
+        connection.deadline = 0;
+    }
+
+    /**
+     * Continue to read the connection, the caller has caught up with the body.
+     */
+    void resumeReading(NioConnection connection) {
+        if (!connection.key.isValid()) return;
+        connection.key.interestOps(SelectionKey.OP_READ);
+        setDeadline(connection, connection.exchange.readTimeout());
+    }
+
+    /**
+     * The exchange is finished, put the connection into the pool or close it.
+     */
+    void finish(NioConnection connection, boolean reusable) {
+        connection.exchange = null;
+        if (reusable && connection.key.isValid() && mExecutor.addIdle(connection)) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+            setDeadline(connection, NioNetworkExecutor.KEEP_ALIVE);
+        } else {
+            close(connection);
+        }
+    }
+
+    void close(NioConnection connection) {
+        mConnections.remove(connection);
+        if (connection.key != null) connection.key.cancel();
+        IOUtils.closeQuietly(connection.channel);
+    }
+
+    private void setDeadline(NioConnection connection, int timeout) {
+        if (timeout <= 0) {
+            connection.deadline = 0;
+        } else {
+            connection.deadline = now() + timeout;
+            if (connection.deadline < mNextSweep) mNextSweep = connection.deadline;
+        }
+    }
+
+    @Override
+    public void run() {
+        IOException shutdown = new IOException("The executor is shut down.");
+        try {
+            loop();
+        } catch (Throwable e) {
+            Logger.e(e, "The selector thread died: " + getName() + ".");
+            shutdown = new IOException("The selector thread died: " + getName() + ".", e);
+        } finally {
+            isQuit = true;
+            for (NioConnection connection : new ArrayList<>(mConnections)) {
+                try {
+                    if (connection.exchange != null) connection.exchange.onIOException(shutdown);
+                    else mExecutor.removeIdle(connection);
+                } catch (Throwable e) {
+                    Logger.e(e);
+                }
+                close(connection);
+            }
+            // The tasks are not run, the exchanges posted to this thread are failed.
+            mTasks.clear();
+            mExecutor.abort(this, shutdown);
+            IOUtils.closeQuietly(mSelector);
+        }
+    }
+
+    private void loop() throws IOException {
+        while (!isQuit) {
+            try {
+                long timeout = mNextSweep - now();
+                if (timeout > 0) mSelector.select(timeout);
+                else mSelector.selectNow();
+            } catch (IOException e) {
+                Logger.e(e);
+            }
+
+            Runnable task;
+            while ((task = mTasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    Logger.e(e);
+                }
+            }
+
+            Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                try {
+                    handle(key);
+                } catch (Throwable e) {
+                    // Such as the callback of the exchange throws.
+                    Logger.e(e);
+                }
+            }
+
+            long now = now();
+            if (now >= mNextSweep) {
+                try {
+                    sweep(now);
+                } catch (Throwable e) {
+                    Logger.e(e);
+                    mNextSweep = now + SWEEP_INTERVAL;
+                }
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        NioConnection connection = (NioConnection)key.attachment();
+        try {
+            if (!key.isValid()) return;
+            if (key.isConnectable()) {
+                if (connection.channel.finishConnect()) onConnected(connection);
+            } else if (key.isWritable()) {
+                write(connection);
+            } else if (key.isReadable()) {
+                read(connection);
+            }
+        } catch (IOException e) {
+            onFailure(connection, e);
+        } catch (CancelledKeyException ignored) {
+        } catch (Throwable e) {
+            Logger.e(e);
+            onFailure(connection, new IOException("Unexpected error: " + connection.route + ".", e));
+        }
+    }
+
+    private void onFailure(NioConnection connection, IOException e) {
+        Exchange exchange = connection.exchange;
+        if (connection.isConnecting) onConnectFailed(connection, e);
+        else if (exchange != null) exchange.onIOException(e);
+        else close(connection);
+    }
+
+    /**
+     * Fail the exchanges that time out, close the idle connections that expire, and race the next address of the
+     * slow connects.
+     */
+    private void sweep(long now) {
+        long next = now + SWEEP_INTERVAL;
+        List<NioConnection> expired = new ArrayList<>();
+        List<NioConnection> slow = new ArrayList<>();
+        for (NioConnection connection : mConnections) {
+            if (connection.fallback != 0) {
+                if (connection.fallback <= now) slow.add(connection);
+                else if (connection.fallback < next) next = connection.fallback;
+            }
+            if (connection.deadline == 0) continue;
+            if (connection.deadline <= now) expired.add(connection);
+            else if (connection.deadline < next) next = connection.deadline;
+        }
+        mNextSweep = next;
+
+        for (NioConnection connection : slow) {
+            connection.fallback = 0;
+            Exchange exchange = connection.exchange;
+            if (connection.isConnecting && exchange != null && exchange.hasNextAddress()) connectNext(exchange);
+        }
+        for (NioConnection connection : expired) {
+            Exchange exchange = connection.exchange;
+            if (connection.isConnecting) {
+                onConnectFailed(connection, new SocketTimeoutException("Connect time out: " + connection.route + "."));
+            } else if (exchange != null) {
+                exchange.onIOException(new SocketTimeoutException("Request time out: " + exchange.route() + "."));
+            } else if (mExecutor.removeIdle(connection)) {
+                close(connection);
+            }
+        }
+    }
+}
@@ -45,8 +45,23 @@ public enum AsyncRequestExecutor {
         Worker<? extends Request<T>, T> worker = new Worker<>(request);
         Work work = new Work<>(worker, what, callback);
         request.setCancelable(work);
+        work.startDeadline();
 
         EXECUTOR.execute(work);
         return work;
     }
+
+    /**
+     * Execute the request, and get the future of its response.
+     *
+     * @return the future completed with the response on the thread of the request, canceling it cancels the
+     * request.
+     * @see ResultFuture
+     */
+    public <T> ResultFuture<Response<T>> submit(Request<T> request) {
+        ResultFuture<Response<T>> future = new ResultFuture<>();
+        future.setCancelable(request);
+        execute(0, request, new FutureListener<>(future));
+        return future;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.rest;
+
+import android.text.TextUtils;
+
+import com.yanzhenjie.nohttp.BasicRequest;
+import com.yanzhenjie.nohttp.Connection;
+import com.yanzhenjie.nohttp.Headers;
+import com.yanzhenjie.nohttp.NoHttp;
+import com.yanzhenjie.nohttp.tools.HeaderUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * The format of the batch request that carries many requests in its body, and of its response that carries their
+ * responses.
+ * </p>
+ * The server decides the format, {@link MultipartMixed} is the common one.
+ *
+ * @see RequestQueue#setBatching(String, int, int, BatchFormat)
+ */
+public interface BatchFormat {
+
+    /**
+     * Write the requests as the body of the batch request, the cookies of the url of each request are added to it,
+     * since the cookies of the batch request are those of the batch url.
+     *
+     * @param requests the requests in the batch.
+     * @param output   the body of the batch request.
+     * @return the content type of the body.
+     */
+    String writeBatch(List<? extends BasicRequest<?>> requests, OutputStream output) throws IOException;
+
+    /**
+     * Split the body of the batch response into the responses of the requests.
+     *
+     * @param headers the headers of the batch response.
+     * @param body    the body of the batch response.
+     * @param size    the number of the requests in the batch.
+     * @return the responses in the order of the requests, the response headers contain the response code and the
+     * body is decoded by its content encoding, null for the request whose response is missing, it is executed alone.
+     */
+    List<Connection> readBatch(Headers headers, byte[] body, int size) throws IOException;
+
+    /**
+     * <p>
+     * Each request is a part of a {@code multipart/mixed} body, whose content type is {@code application/http} and
+     * content is the HTTP/1.1 request without body. The response is also {@code multipart/mixed}, each part is the
+     * HTTP/1.1 response of a request.
+     * </p>
+     * The parts are matched by the first number in their {@code Content-ID}, such as {@code <response-1>}, or by
+     * their order if there is no {@code Content-ID}. The part whose {@code Content-Encoding} is gzip is decoded.
+     */
+    class MultipartMixed
+      implements BatchFormat {
+
+        private static final String CHARSET = "ISO-8859-1";
+        private static final String CRLF = "\r\n";
+
+        @Override
+        public String writeBatch(List<? extends BasicRequest<?>> requests, OutputStream output) throws IOException {
+            String boundary = "batch_" + UUID.randomUUID().toString().replace("-", "");
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < requests.size(); i++) {
+                BasicRequest<?> request = requests.get(i);
+                URL url = new URL(request.url());
+                String path = TextUtils.isEmpty(url.getFile()) ? "/" : url.getFile();
+
+                builder.append("--").append(boundary).append(CRLF);
+                builder.append("Content-Type: application/http").append(CRLF);
+                builder.append("Content-ID: <").append(i + 1).append(">").append(CRLF);
+                builder.append(CRLF);
+                builder.append(request.getRequestMethod().getValue()).append(' ').append(path).append(" HTTP/1.1");
+                builder.append(CRLF);
+                builder.append("Host: ").append(url.getAuthority()).append(CRLF);
+                Headers headers = new Headers();
+                for (Map.Entry<String, List<String>> entry : request.getHeaders().entrySet()) {
+                    headers.add(entry.getKey(), new ArrayList<>(entry.getValue()));
+                }
+                headers.addCookie(URI.create(request.url()), NoHttp.getInitializeConfig().getCookieManager());
+                for (Map.Entry<String, String> entry : headers.toRequestHeaders().entrySet()) {
+                    if (TextUtils.isEmpty(entry.getKey()) || TextUtils.isEmpty(entry.getValue())) continue;
+                    builder.append(entry.getKey()).append(": ").append(entry.getValue()).append(CRLF);
+                }
+                builder.append(CRLF);
+            }
+            builder.append("--").append(boundary).append("--").append(CRLF);
+            output.write(builder.toString().getBytes(CHARSET));
+            return "multipart/mixed; boundary=" + boundary;
+        }
+
+        @Override
+        public List<Connection> readBatch(Headers headers, byte[] body, int size) throws IOException {
+            String boundary = HeaderUtils.parseHeadValue(headers.getContentType(), "boundary", null);
+            if (TextUtils.isEmpty(boundary)) throw new IOException("The batch response is not multipart.");
+            if (boundary.startsWith("\"") && boundary.endsWith("\"") && boundary.length() > 1)
+                boundary = boundary.substring(1, boundary.length() - 1);
+
+            Connection[] connections = new Connection[size];
+            // Each char is a byte, so the index of the text is the index of the body.
+            String text = new String(body, CHARSET);
+            String delimiter = "--" + boundary;
+            int start = text.indexOf(delimiter);
+            int order = 0;
+            while (start >= 0) {
+                int partStart = start + delimiter.length();
+                if (text.startsWith("--", partStart)) break;
+                int end = text.indexOf(CRLF + delimiter, partStart);
+                if (end < 0) break;
+
+                int headerEnd = text.indexOf(CRLF + CRLF, partStart);
+                if (headerEnd > 0 && headerEnd < end) {
+                    int index = parseIndex(text.substring(partStart, headerEnd), order);
+                    if (index >= 0 && index < size)
+                        connections[index] = readResponse(text, body, headerEnd + 4, end);
+                }
+                order++;
+                start = end + CRLF.length();
+            }
+            return Arrays.asList(connections);
+        }
+
+        /**
+         * Get the index of the request from the Content-ID of the part.
+         */
+        private static int parseIndex(String partHeaders, int order) {
+            for (String line : partHeaders.split(CRLF)) {
+                int colon = line.indexOf(':');
+                if (colon <= 0 || !"Content-ID".equalsIgnoreCase(line.substring(0, colon).trim())) continue;
+
+                String value = line.substring(colon + 1).trim();
+                int begin = 0;
+                while (begin < value.length() && !Character.isDigit(value.charAt(begin))) begin++;
+                int end = begin;
+                while (end < value.length() && Character.isDigit(value.charAt(end))) end++;
+                if (begin == end) return order;
+                try {
+                    return Integer.parseInt(value.substring(begin, end)) - 1;
+                } catch (NumberFormatException e) {
+                    return order;
+                }
+            }
+            return order;
+        }
+
+        /**
+         * Read the HTTP/1.1 response in the part.
+         *
+         * @return null if it can not be read.
+         */
+        private static Connection readResponse(String text, byte[] body, int start, int end) {
+            int headerEnd = text.indexOf(CRLF + CRLF, start);
+            if (headerEnd < 0 || headerEnd > end) headerEnd = end;
+            String[] lines = text.substring(start, headerEnd).split(CRLF);
+            String[] status = lines[0].split(" ");
+            if (status.length < 2 || !status[0].startsWith("HTTP/")) return null;
+
+            Headers headers = new Headers();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+            }
+            try {
+                headers.set(Headers.HEAD_KEY_RESPONSE_CODE, Integer.toString(Integer.parseInt(status[1])));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            int bodyStart = Math.min(headerEnd + 4, end);
+            int bodyEnd = end;
+            int contentLength = headers.getContentLength();
+            if (contentLength > 0) bodyEnd = Math.min(end, bodyStart + contentLength);
+            byte[] data = new byte[bodyEnd - bodyStart];
+            System.arraycopy(body, bodyStart, data, 0, data.length);
+            InputStream stream = new ByteArrayInputStream(data);
+            if (data.length > 0 && HeaderUtils.isGzipContent(headers.getContentEncoding())) {
+                try {
+                    stream = new GZIPInputStream(stream);
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+            return new Connection(null, headers, stream, null);
+        }
+    }
+}
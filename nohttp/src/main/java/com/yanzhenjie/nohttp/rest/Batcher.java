@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.rest;
+
+import android.os.SystemClock;
+
+import com.yanzhenjie.nohttp.RequestMethod;
+import com.yanzhenjie.nohttp.WorkQueue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The batchable requests of a queue waiting to be executed.
+ * </p>
+ * The dispatcher that takes a batchable request waits for the window if others are waiting, then takes them out of
+ * the queue and sends them together. The responses are kept by the requests, and the requests are put back into the
+ * queue, so each of them still reads and writes the cache and parses its response as usual.
+ */
+class Batcher {
+
+    private final WorkQueue<Work<? extends Request<?>, ?>> mQueue;
+    private final String mUrl;
+    private final String mRoute;
+    private final int mWindow;
+    private final int mMaxSize;
+    private final BatchFormat mFormat;
+    private final Map<Request<?>, Work<? extends Request<?>, ?>> mPending = new LinkedHashMap<>();
+
+    Batcher(WorkQueue<Work<? extends Request<?>, ?>> queue, String url, int window, int maxSize, BatchFormat format) {
+        this.mQueue = queue;
+        this.mUrl = url;
+        this.mRoute = parseRoute(url);
+        this.mWindow = window;
+        this.mMaxSize = maxSize;
+        this.mFormat = format;
+    }
+
+    String getUrl() {
+        return mUrl;
+    }
+
+    BatchFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * The GET requests to the host of the batch url without proxy can be batched, except the hedged requests and
+     * the requests only reading the cache.
+     */
+    boolean isBatchable(Request<?> request) {
+        return request.getRequestMethod() == RequestMethod.GET &&
+               request.getProxy() == null &&
+               request.getHedgePercentile() == 0 &&
+               request.getCacheMode() != CacheMode.ONLY_READ_CACHE &&
+               mRoute.equals(parseRoute(request.url()));
+    }
+
+    synchronized void register(Work<? extends Request<?>, ?> work) {
+        mPending.put(work.getRequest(), work);
+        if (mPending.size() >= mMaxSize) notifyAll();
+    }
+
+    synchronized void unregister(Request<?> request) {
+        mPending.remove(request);
+    }
+
+    /**
+     * Get the other requests that may be batched with the request, wait for the window if there are some of them
+     * but the batch is not full. The calling dispatcher keeps the place of the request in the queue while waiting,
+     * so the window is not waited beyond the deadline of the request.
+     */
+    synchronized List<Request<?>> candidates(Request<?> request) {
+        List<Request<?>> candidates = collect(request);
+        if (candidates.isEmpty() || mWindow <= 0) return candidates;
+
+        long remaining = Math.min(mWindow, request.getRemainingTime());
+        long deadline = SystemClock.elapsedRealtime() + remaining;
+        while (mPending.size() < mMaxSize && remaining > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new ArrayList<>();
+            }
+            remaining = deadline - SystemClock.elapsedRealtime();
+        }
+        return collect(request);
+    }
+
+    private List<Request<?>> collect(Request<?> request) {
+        List<Request<?>> candidates = new ArrayList<>();
+        for (Map.Entry<Request<?>, Work<? extends Request<?>, ?>> entry : mPending.entrySet()) {
+            if (candidates.size() >= mMaxSize - 1) break;
+            Request<?> candidate = entry.getKey();
+            if (candidate == request || entry.getValue().isDone()) continue;
+            if (candidate.isCancelled() || candidate.hasBatchedConnection()) continue;
+            candidates.add(candidate);
+        }
+        return candidates;
+    }
+
+    /**
+     * Take the request out of the reach of the dispatchers, it is still counted by the queue until it is requeued.
+     *
+     * @return false if it has been taken by a dispatcher.
+     */
+    boolean steal(Request<?> request) {
+        Work<? extends Request<?>, ?> work;
+        synchronized (this) {
+            work = mPending.get(request);
+        }
+        return work != null && mQueue.hold(work);
+    }
+
+    /**
+     * Put the stolen request back into the queue, or drop it if it has finished.
+     */
+    void requeue(Request<?> request) {
+        Work<? extends Request<?>, ?> work;
+        synchronized (this) {
+            work = mPending.get(request);
+        }
+        if (work == null) return;
+        if (work.isDone()) mQueue.remove(work);
+        else mQueue.restore(work);
+    }
+
+    private static String parseRoute(String url) {
+        try {
+            URL u = new URL(url);
+            int port = u.getPort() == -1 ? u.getDefaultPort() : u.getPort();
+            return u.getProtocol() + "://" + u.getHost() + ":" + port;
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}
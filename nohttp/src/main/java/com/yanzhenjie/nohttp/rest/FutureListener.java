@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.rest;
+
+/**
+ * <p>Complete the {@link ResultFuture} with the response of the request.</p>
+ */
+class FutureListener<T>
+  implements OnResponseListener<T> {
+
+    private final ResultFuture<Response<T>> mFuture;
+
+    FutureListener(ResultFuture<Response<T>> future) {
+        this.mFuture = future;
+    }
+
+    @Override
+    public void onStart(int what) {
+    }
+
+    @Override
+    public void onSucceed(int what, Response<T> response) {
+        mFuture.complete(response);
+    }
+
+    @Override
+    public void onFailed(int what, Response<T> response) {
+        mFuture.complete(response);
+    }
+
+    @Override
+    public void onFinish(int what) {
+        // No response, the request has been canceled.
+        mFuture.cancel(false);
+    }
+}
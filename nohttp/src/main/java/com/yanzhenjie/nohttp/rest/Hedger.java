@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.rest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The recent latency and the hedge budget of each host.
+ * </p>
+ * Every hedgeable request adds {@link #BUDGET_RATIO} to the budget of its host, and every hedge takes 1 from it, so
+ * the hedges are at most about one tenth of the hedgeable requests of the host.
+ */
+class Hedger {
+
+    private static final int WINDOW = 64;
+    private static final int MIN_SAMPLES = 16;
+    private static final float BUDGET_RATIO = 0.1F;
+    private static final float MAX_BUDGET = 10;
+    /**
+     * The max number of the hosts to remember, the least recently used one is forgotten beyond it.
+     */
+    private static final int MAX_HOSTS = 64;
+
+    private final Map<String, Host> mHosts = new LinkedHashMap<String, Host>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Host> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    /**
+     * Record the latency of a successful request.
+     */
+    synchronized void record(String host, long latency) {
+        Host stats = host(host);
+        stats.samples[stats.next] = latency;
+        stats.next = (stats.next + 1) % WINDOW;
+        if (stats.count < WINDOW) stats.count++;
+    }
+
+    /**
+     * Get the time to wait before hedging.
+     *
+     * @param percentile such as 95.
+     * @return -1 if there are not enough samples of the host.
+     */
+    synchronized long getDelay(String host, int percentile) {
+        Host stats = mHosts.get(host);
+        if (stats == null || stats.count < MIN_SAMPLES) return -1;
+        long[] sorted = Arrays.copyOf(stats.samples, stats.count);
+        Arrays.sort(sorted);
+        int index = Math.min(stats.count - 1, stats.count * percentile / 100);
+        return sorted[index];
+    }
+
+    /**
+     * A hedgeable request of the host is executed.
+     */
+    synchronized void deposit(String host) {
+        Host stats = host(host);
+        stats.budget = Math.min(MAX_BUDGET, stats.budget + BUDGET_RATIO);
+    }
+
+    /**
+     * Take a hedge from the budget of the host.
+     *
+     * @return false if the budget is used up.
+     */
+    synchronized boolean acquire(String host) {
+        Host stats = host(host);
+        if (stats.budget < 1) return false;
+        stats.budget -= 1;
+        return true;
+    }
+
+    /**
+     * Give back a hedge taken from the budget of the host that is not started.
+     */
+    synchronized void refund(String host) {
+        Host stats = host(host);
+        stats.budget = Math.min(MAX_BUDGET, stats.budget + 1);
+    }
+
+    private Host host(String host) {
+        Host stats = mHosts.get(host);
+        if (stats == null) {
+            stats = new Host();
+            mHosts.put(host, stats);
+        }
+        return stats;
+    }
+
+    private static class Host {
+
+        private final long[] samples = new long[WINDOW];
+        private int next;
+        private int count;
+        private float budget;
+    }
+}
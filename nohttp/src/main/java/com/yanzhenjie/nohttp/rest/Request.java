@@ -18,8 +18,10 @@ package com.yanzhenjie.nohttp.rest;
 import android.text.TextUtils;
 
 import com.yanzhenjie.nohttp.BasicRequest;
+import com.yanzhenjie.nohttp.Connection;
 import com.yanzhenjie.nohttp.Headers;
 import com.yanzhenjie.nohttp.RequestMethod;
+import com.yanzhenjie.nohttp.WorkQueue;
 
 /**
  * <p>
@@ -36,6 +38,34 @@ public abstract class Request<Result> extends BasicRequest<Request> {
      * If just read from cache.
      */
     private CacheMode mCacheMode = CacheMode.DEFAULT;
+    /**
+     * The percentile of the recent latency to hedge at.
+     */
+    private int mHedgePercentile;
+    /**
+     * The queue executing the handle, its hedged attempts take the places of the queue.
+     */
+    private WorkQueue<?> mWorkQueue;
+    /**
+     * The batcher of the queue if the handle can be batched.
+     */
+    private Batcher mBatcher;
+    /**
+     * The response received by a batch.
+     */
+    private volatile Connection mBatchedConnection;
+    /**
+     * The response shared by the same handle executed at the same time.
+     */
+    private volatile RequestHandler.Protocol mSharedProtocol;
+    /**
+     * The same handle executed at the same time failed, the handle is executed by itself.
+     */
+    private volatile boolean isAlone;
+    /**
+     * The hedged attempts executing the handle, they are aborted with the handle.
+     */
+    private volatile RequestHandler.Race mRace;
 
     /**
      * Create a handle, handle method is {@link RequestMethod#GET}.
@@ -94,6 +124,105 @@ public abstract class Request<Result> extends BasicRequest<Request> {
         return mCacheMode;
     }
 
+    /**
+     * Hedge the handle, when no response has arrived after the given percentile of the recent latency of the host, a
+     * second identical attempt is started, the first to finish wins and the other one is canceled. Only the GET and
+     * HEAD handles are hedged, and the hedges of each host are limited to about one tenth of its hedged handles.
+     *
+     * @param percentile such as 95, the default value is 0, that is to say, no hedging.
+     */
+    public Request setHedgePercentile(int percentile) {
+        if (percentile < 0 || percentile >= 100)
+            throw new IllegalArgumentException("The percentile must be in [0, 100).");
+        this.mHedgePercentile = percentile;
+        return this;
+    }
+
+    /**
+     * Get the percentile of the recent latency to hedge at, 0 means no hedging.
+     */
+    public int getHedgePercentile() {
+        return mHedgePercentile;
+    }
+
+    void setWorkQueue(WorkQueue<?> queue) {
+        this.mWorkQueue = queue;
+    }
+
+    WorkQueue<?> getWorkQueue() {
+        return mWorkQueue;
+    }
+
+    void setBatcher(Batcher batcher) {
+        this.mBatcher = batcher;
+    }
+
+    Batcher getBatcher() {
+        return mBatcher;
+    }
+
+    void setBatchedConnection(Connection connection) {
+        this.mBatchedConnection = connection;
+    }
+
+    boolean hasBatchedConnection() {
+        return mBatchedConnection != null;
+    }
+
+    /**
+     * Take the response received by a batch, it can only be taken once.
+     */
+    Connection takeBatchedConnection() {
+        Connection connection = mBatchedConnection;
+        mBatchedConnection = null;
+        return connection;
+    }
+
+    void setSharedProtocol(RequestHandler.Protocol protocol) {
+        this.mSharedProtocol = protocol;
+    }
+
+    /**
+     * Take the response shared by the same handle, it can only be taken once.
+     */
+    RequestHandler.Protocol takeSharedProtocol() {
+        RequestHandler.Protocol protocol = mSharedProtocol;
+        mSharedProtocol = null;
+        return protocol;
+    }
+
+    void setAlone(boolean alone) {
+        this.isAlone = alone;
+    }
+
+    boolean isAlone() {
+        return isAlone;
+    }
+
+    void setRace(RequestHandler.Race race) {
+        this.mRace = race;
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        abortRace();
+    }
+
+    @Override
+    public void abort() {
+        super.abort();
+        abortRace();
+    }
+
+    /**
+     * Abort the hedged attempts executing the handle.
+     */
+    void abortRace() {
+        RequestHandler.Race race = mRace;
+        if (race != null) race.abort();
+    }
+
     /**
      * Parse handle results for generic objects.
      *
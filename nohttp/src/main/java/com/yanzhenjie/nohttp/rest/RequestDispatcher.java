@@ -15,16 +15,15 @@
  */
 package com.yanzhenjie.nohttp.rest;
 
+import android.os.SystemClock;
+
 import com.yanzhenjie.nohttp.Logger;
+import com.yanzhenjie.nohttp.WorkQueue;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * <p> Request queue polling thread. </p>
+ * <p> Request queue polling thread, it takes the work from the queue and runs it on itself. </p>
  *
  * Created in Oct 19, 2015 8:35:35 AM.
  *
@@ -33,20 +32,26 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class RequestDispatcher
   extends Thread {
 
-    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
-        private final AtomicInteger mCount = new AtomicInteger(1);
+    private static final AtomicInteger COUNT = new AtomicInteger(1);
 
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "Request #" + mCount.getAndIncrement());
-        }
-    };
+    private final WorkQueue<Work<? extends Request<?>, ?>> mQueue;
+    private final RequestQueue mOwner;
+    private final Object mLock = new Object();
+    private volatile boolean mQuit = false;
+    private volatile boolean isRetired;
+    private boolean isIdle;
 
-    private final Executor mExecutor = Executors.newCachedThreadPool(THREAD_FACTORY);
-    private final BlockingQueue<Work<? extends Request<?>, ?>> mQueue;
-    private boolean mQuit = false;
+    public RequestDispatcher(WorkQueue<Work<? extends Request<?>, ?>> queue) {
+        this(queue, null);
+    }
 
-    public RequestDispatcher(BlockingQueue<Work<? extends Request<?>, ?>> queue) {
+    /**
+     * @param owner the queue whose keep-alive time decides when the idle dispatcher exits.
+     */
+    RequestDispatcher(WorkQueue<Work<? extends Request<?>, ?>> queue, RequestQueue owner) {
+        super("Request #" + COUNT.getAndIncrement());
         this.mQueue = queue;
+        this.mOwner = owner;
     }
 
     public void quit() {
@@ -54,29 +59,95 @@ public class RequestDispatcher
         interrupt();
     }
 
+    /**
+     * Exit after the work being executed is finished, the work is not interrupted.
+     */
+    void retire() {
+        synchronized (mLock) {
+            isRetired = true;
+            if (isIdle) interrupt();
+        }
+    }
+
+    /**
+     * Whether the dispatcher is waiting for a work.
+     */
+    boolean isIdle() {
+        synchronized (mLock) {
+            return isIdle;
+        }
+    }
+
     @Override
     public void run() {
         while (!mQuit) {
-            final Work<? extends Request<?>, ?> work;
+            synchronized (mLock) {
+                if (isRetired) break;
+                isIdle = true;
+            }
+
+            long keepAlive = mOwner == null ? 0 : mOwner.getKeepAliveTime();
+            Work<? extends Request<?>, ?> work;
             try {
-                work = mQueue.take();
+                work = keepAlive > 0 ? mQueue.poll(keepAlive) : mQueue.take();
             } catch (InterruptedException e) {
                 if (mQuit) {
                     Logger.w("Queue exit, stop blocking.");
                     break;
                 }
+                if (isRetired) break;
                 Logger.e(e);
                 continue;
+            } finally {
+                synchronized (mLock) {
+                    isIdle = false;
+                }
             }
+            if (work == null) {
+                if (mOwner.onIdle(this)) break;
+                continue;
+            }
+            // Clear the interrupt of retire() that came after the work was taken, the work is executed first.
+            if (isRetired) Thread.interrupted();
+            if (attach(work)) continue;
 
-            synchronized (this) {
-                work.setLock(this);
-                mExecutor.execute(work);
-                try {
-                    this.wait();
-                } catch (InterruptedException ignored) {
-                }
+            long start = SystemClock.elapsedRealtime();
+            try {
+                work.run();
+            } finally {
+                if (work.isNetworkSample())
+                    mQueue.finish(work, SystemClock.elapsedRealtime() - start, work.isDropped());
+                else mQueue.finish(work);
             }
+            // Clear the interrupt left by canceling the work, the next take() should block normally.
+            Thread.interrupted();
         }
     }
+
+    /**
+     * Attach the work to the same request being executed, the work leaves the dispatcher and is put back into the
+     * queue when the request finishes, then it shares the response or is executed by itself.
+     *
+     * @return true if the work is attached.
+     */
+    private boolean attach(final Work<? extends Request<?>, ?> work) {
+        if (work.isDone()) return false;
+        return SyncRequestExecutor.INSTANCE.attach(new RequestHandler.Follower() {
+            @Override
+            public Request<?> getRequest() {
+                return work.getRequest();
+            }
+
+            @Override
+            public void onAttached() {
+                mQueue.suspend(work);
+            }
+
+            @Override
+            public void onLanded() {
+                if (work.isDone()) mQueue.remove(work);
+                else mQueue.restore(work);
+            }
+        });
+    }
 }
@@ -21,14 +21,37 @@ import com.yanzhenjie.nohttp.BasicRequest;
 import com.yanzhenjie.nohttp.Connection;
 import com.yanzhenjie.nohttp.Headers;
 import com.yanzhenjie.nohttp.HttpConnection;
+import com.yanzhenjie.nohttp.Logger;
 import com.yanzhenjie.nohttp.NetworkExecutor;
+import com.yanzhenjie.nohttp.NoHttp;
+import com.yanzhenjie.nohttp.RequestMethod;
+import com.yanzhenjie.nohttp.WorkQueue;
 import com.yanzhenjie.nohttp.cache.CacheEntity;
 import com.yanzhenjie.nohttp.error.NotFoundCacheError;
+import com.yanzhenjie.nohttp.error.TimeoutError;
 import com.yanzhenjie.nohttp.tools.CacheStore;
 import com.yanzhenjie.nohttp.tools.HeaderUtils;
 import com.yanzhenjie.nohttp.tools.IOUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -40,38 +63,72 @@ import java.io.IOException;
  */
 public class RequestHandler {
 
+    private static final ThreadFactory HEDGE_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Hedge #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * The maximum number of hedged attempts being executed, a hedge is skipped when they are all busy.
+     */
+    private static final int MAX_HEDGES = 4;
+    private static final Executor HEDGE_EXECUTOR = new ThreadPoolExecutor(0, MAX_HEDGES, 60, TimeUnit.SECONDS,
+      new SynchronousQueue<Runnable>(), HEDGE_THREAD_FACTORY);
+    /**
+     * Starts the hedged attempts after the delay, the canceled delays are short, so they are not purged.
+     */
+    private static final Timer HEDGE_TIMER = new Timer("NoHttp Hedge", true);
+
     private CacheStore<CacheEntity> mCacheStore;
     private HttpConnection mHttpConnection;
     private Interceptor mInterceptor;
+    /**
+     * The cacheable GET requests being executed, the same requests wait for them instead of handle again.
+     */
+    private final Map<String, Flight> mFlights;
+    private final Hedger mHedger;
 
     public RequestHandler(CacheStore<CacheEntity> cache, NetworkExecutor executor) {
         this(cache, new HttpConnection(executor));
     }
 
     public RequestHandler(CacheStore<CacheEntity> cache, HttpConnection httpConnection) {
-        this.mCacheStore = cache;
-        this.mHttpConnection = httpConnection;
+        this(cache, httpConnection, new HashMap<String, Flight>(), new Hedger());
     }
 
     public RequestHandler(CacheStore<CacheEntity> cache, NetworkExecutor executor, Interceptor interceptor) {
-        this.mCacheStore = cache;
-        this.mHttpConnection = new HttpConnection(executor);
+        this(cache, new HttpConnection(executor));
         this.mInterceptor = interceptor;
     }
 
+    private RequestHandler(CacheStore<CacheEntity> cache, HttpConnection httpConnection,
+                           Map<String, Flight> flights, Hedger hedger) {
+        this.mCacheStore = cache;
+        this.mHttpConnection = httpConnection;
+        this.mFlights = flights;
+        this.mHedger = hedger;
+    }
+
     public <T> Response<T> handle(Request<T> request) {
         long startTime = SystemClock.elapsedRealtime();
 
         if (mInterceptor != null) {
-            RequestHandler handler = new RequestHandler(mCacheStore, mHttpConnection);
+            RequestHandler handler = new RequestHandler(mCacheStore, mHttpConnection, mFlights, mHedger);
             return mInterceptor.intercept(handler, request);
         } else {
             String cacheKey = request.getCacheKey();
             CacheMode cacheMode = request.getCacheMode();
-            CacheEntity localCache = mCacheStore.get(cacheKey);
 
-            Protocol protocol = requestCacheOrNetwork(cacheMode, localCache, request);
-            handleCache(cacheKey, cacheMode, localCache, protocol);
+            Protocol protocol;
+            if (isCoalescable(request)) protocol = coalesce(cacheKey, cacheMode, request);
+            else protocol = execute(cacheKey, cacheMode, request);
+            // The response of the batch is not used, such as the cache is read.
+            IOUtils.closeQuietly(request.takeBatchedConnection());
 
             T result = null;
             if (protocol.exception == null) {
@@ -87,6 +144,132 @@ public class RequestHandler {
         }
     }
 
+    /**
+     * Read the cache or request the network, and then update the cache.
+     */
+    private Protocol execute(String cacheKey, CacheMode cacheMode, Request<?> request) {
+        CacheEntity localCache = mCacheStore.get(cacheKey);
+
+        Protocol protocol = requestCacheOrNetwork(cacheMode, localCache, request);
+        handleCache(cacheKey, cacheMode, localCache, protocol);
+        return protocol;
+    }
+
+    /**
+     * Only the GET requests that may write the cache are coalesced.
+     */
+    private boolean isCoalescable(Request<?> request) {
+        CacheMode cacheMode = request.getCacheMode();
+        return request.getRequestMethod() == RequestMethod.GET &&
+               cacheMode != CacheMode.ONLY_READ_CACHE &&
+               cacheMode != CacheMode.ONLY_REQUEST_NETWORK;
+    }
+
+    /**
+     * If the same request is being executed, wait for it and share its response body, otherwise execute it and
+     * let the same requests that come later share the response body. Only the successful response is shared, the
+     * followers of a failed request execute by themselves.
+     */
+    private Protocol coalesce(String cacheKey, CacheMode cacheMode, Request<?> request) {
+        Protocol shared = request.takeSharedProtocol();
+        if (shared != null) return share(shared);
+        if (request.isAlone()) {
+            request.setAlone(false);
+            return execute(cacheKey, cacheMode, request);
+        }
+
+        String flightKey = cacheMode + ":" + cacheKey;
+        Flight flight;
+        boolean isLeader = false;
+        synchronized (mFlights) {
+            flight = mFlights.get(flightKey);
+            if (flight == null) {
+                flight = new Flight();
+                mFlights.put(flightKey, flight);
+                isLeader = true;
+            }
+        }
+
+        if (isLeader) {
+            Protocol protocol = null;
+            try {
+                protocol = execute(cacheKey, cacheMode, request);
+                return protocol;
+            } finally {
+                land(flightKey, flight, protocol);
+            }
+        }
+
+        // The follower that is not attached, such as a synchronous request, waits on its own thread.
+        try {
+            flight.latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Protocol protocol = new Protocol();
+            protocol.exception = e;
+            return protocol;
+        }
+
+        shared = flight.protocol;
+        // The leader failed, try it by self.
+        if (shared == null) return execute(cacheKey, cacheMode, request);
+        return share(shared);
+    }
+
+    /**
+     * Attach the follower to the same request being executed, the follower leaves its thread and is called back
+     * when the request finishes.
+     *
+     * @return false if the same request is not being executed.
+     */
+    boolean attach(Follower follower) {
+        Request<?> request = follower.getRequest();
+        if (!isCoalescable(request) || request.isAlone()) return false;
+
+        String flightKey = request.getCacheMode() + ":" + request.getCacheKey();
+        synchronized (mFlights) {
+            Flight flight = mFlights.get(flightKey);
+            if (flight == null) return false;
+            follower.onAttached();
+            flight.followers.add(follower);
+            return true;
+        }
+    }
+
+    /**
+     * The leader finished, wake the followers, they share the response if it succeeded.
+     */
+    private void land(String flightKey, Flight flight, Protocol protocol) {
+        synchronized (mFlights) {
+            mFlights.remove(flightKey);
+        }
+        Protocol shared = protocol != null && protocol.exception == null ? protocol : null;
+        flight.protocol = shared;
+        flight.latch.countDown();
+
+        for (Follower follower : flight.followers) {
+            Request<?> request = follower.getRequest();
+            if (shared != null) request.setSharedProtocol(shared);
+            else request.setAlone(true);
+            follower.onLanded();
+        }
+    }
+
+    private static Protocol share(Protocol shared) {
+        Protocol protocol = new Protocol();
+        if (shared.headers != null) {
+            protocol.headers = new Headers();
+            for (Map.Entry<String, List<String>> entry : shared.headers.entrySet()) {
+                for (String value : entry.getValue()) {
+                    protocol.headers.add(entry.getKey(), value);
+                }
+            }
+        }
+        protocol.fromCache = shared.fromCache;
+        protocol.body = shared.body;
+        return protocol;
+    }
+
     private Protocol requestCacheOrNetwork(CacheMode cacheMode, CacheEntity localCache, Request<?> request) {
         Protocol protocol = null;
         switch (cacheMode) {
@@ -171,14 +354,219 @@ public class RequestHandler {
      * @param request handle object.
      * @return {@link Protocol}.
      */
-    private Protocol getHttpProtocol(BasicRequest<?> request) {
+    private Protocol getHttpProtocol(Request<?> request) {
+        Connection batched = request.takeBatchedConnection();
+        if (batched != null) return readProtocol(request, batched);
+
+        Batcher batcher = request.getBatcher();
+        if (batcher != null) {
+            batched = batch(batcher, request);
+            if (batched != null) return readProtocol(request, batched);
+        }
+
+        String host = WorkQueue.parseHost(request.url());
+        RequestMethod method = request.getRequestMethod();
+        boolean isIdempotent = method == RequestMethod.GET || method == RequestMethod.HEAD;
+        if (isIdempotent && request.getHedgePercentile() > 0) {
+            mHedger.deposit(host);
+            long delay = mHedger.getDelay(host, request.getHedgePercentile());
+            if (delay >= 0) return hedge(host, request, Math.max(1, delay));
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        Protocol protocol = readProtocol(request, mHttpConnection.getConnection(request));
+        if (isIdempotent && protocol.exception == null)
+            mHedger.record(host, SystemClock.elapsedRealtime() - startTime);
+        return protocol;
+    }
+
+    /**
+     * Execute the request on the calling thread, if it does not finish within the delay, start a second attempt on
+     * another thread, the first to succeed wins and the other one is aborted. The attempts are executed with copies
+     * of the request, so they do not share the headers. The second attempt takes a place of the queue of the request,
+     * it is skipped if the queue has no spare place.
+     */
+    private Protocol hedge(String host, Request<?> request, long delay) {
+        final Race race = new Race(host);
+        final BasicRequest<?> copy = copyRequest(request);
+        final WorkQueue<?> queue = request.getWorkQueue();
+        Attempt primary = race.add(copyRequest(request), null);
+        // Canceling or aborting the request aborts the attempts.
+        request.setRace(race);
+        if (request.isCancelled() || request.isAborted()) race.abort();
+        TimerTask task = new TimerTask() {
+            @Override
+            public void run() {
+                startHedge(race, copy, queue);
+            }
+        };
+        HEDGE_TIMER.schedule(task, delay);
+
+        try {
+            primary.run();
+            task.cancel();
+            return race.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            race.abort();
+            Protocol protocol = new Protocol();
+            protocol.exception = e;
+            return protocol;
+        } finally {
+            request.setRace(null);
+        }
+    }
+
+    /**
+     * Start the second attempt if the race is still on and there is a spare place for it, called on the timer.
+     */
+    private void startHedge(Race race, BasicRequest<?> copy, WorkQueue<?> queue) {
+        if (!race.isRunning()) return;
+        if (queue != null && !queue.acquire(copy.url(), copy.getProxy())) return;
+        if (!mHedger.acquire(race.mHost)) {
+            if (queue != null) queue.release(copy.url(), copy.getProxy());
+            return;
+        }
+
+        Attempt attempt = race.add(copy, queue);
+        if (attempt == null) {
+            if (queue != null) queue.release(copy.url(), copy.getProxy());
+            mHedger.refund(race.mHost);
+            return;
+        }
+        try {
+            HEDGE_EXECUTOR.execute(attempt);
+            Logger.d("Hedge the request: " + copy.url() + ".");
+        } catch (RejectedExecutionException e) {
+            // All the hedges are busy.
+            race.remove(attempt);
+            mHedger.refund(race.mHost);
+        }
+    }
+
+    /**
+     * Send the request with the other batchable requests waiting in the queue, the responses of the others are kept
+     * by them.
+     *
+     * @return the response of the request, or null if it is not batched, it is executed alone.
+     */
+    private Connection batch(Batcher batcher, Request<?> request) {
+        List<Request<?>> requests = new ArrayList<>();
+        requests.add(request);
+        for (Request<?> candidate : batcher.candidates(request)) {
+            if (!batcher.steal(candidate)) continue;
+            if (isNetworkNeeded(candidate)) requests.add(candidate);
+            else batcher.requeue(candidate);
+        }
+        if (requests.size() == 1) return null;
+
+        List<Connection> responses = null;
+        try {
+            Logger.d("Batch " + requests.size() + " requests: " + batcher.getUrl() + ".");
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            String contentType = batcher.getFormat().writeBatch(requests, outputStream);
+            BasicRequest<?> batchRequest = new BasicRequest(batcher.getUrl(), RequestMethod.POST);
+            batchRequest.removeAll();
+            batchRequest.setDefineRequestBody(new ByteArrayInputStream(outputStream.toByteArray()), contentType);
+            batchRequest.setSSLSocketFactory(request.getSSLSocketFactory());
+            batchRequest.setHostnameVerifier(request.getHostnameVerifier());
+            batchRequest.setConnectTimeout(request.getConnectTimeout());
+            batchRequest.setReadTimeout(request.getReadTimeout());
+            long remaining = request.getRemainingTime();
+            if (remaining != Long.MAX_VALUE) {
+                batchRequest.setDeadline((int)Math.max(1, Math.min(remaining, Integer.MAX_VALUE)));
+                batchRequest.startDeadline();
+            }
+
+            Protocol protocol = readProtocol(batchRequest, mHttpConnection.getConnection(batchRequest));
+            int responseCode = protocol.exception == null ? protocol.headers.getResponseCode() : 0;
+            if (responseCode >= 200 && responseCode < 300 && protocol.body != null)
+                responses = batcher.getFormat().readBatch(protocol.headers, protocol.body, requests.size());
+            else Logger.w("The batch failed, the requests are executed alone: " + batcher.getUrl() + ".");
+        } catch (Exception e) {
+            Logger.w(e, "The batch failed, the requests are executed alone: " + batcher.getUrl() + ".");
+        }
+
+        for (int i = 1; i < requests.size(); i++) {
+            Request<?> other = requests.get(i);
+            if (responses != null && responses.get(i) != null) {
+                saveCookies(other, responses.get(i));
+                other.setBatchedConnection(responses.get(i));
+            }
+            batcher.requeue(other);
+        }
+        if (responses == null || responses.get(0) == null) return null;
+        saveCookies(request, responses.get(0));
+        return responses.get(0);
+    }
+
+    /**
+     * Whether the request will read the network rather than the cache, the cache headers are set if it does.
+     */
+    private boolean isNetworkNeeded(Request<?> request) {
+        CacheEntity localCache = mCacheStore.get(request.getCacheKey());
+        switch (request.getCacheMode()) {
+            case ONLY_READ_CACHE: {
+                return false;
+            }
+            case NONE_CACHE_REQUEST_NETWORK: {
+                return localCache == null;
+            }
+            case DEFAULT: {
+                if (localCache != null && localCache.getLocalExpire() > System.currentTimeMillis()) return false;
+                setRequestCacheHeader(request, localCache);
+                return true;
+            }
+            case REQUEST_NETWORK_FAILED_READ_CACHE: {
+                setRequestCacheHeader(request, localCache);
+                return true;
+            }
+            default: {
+                return true;
+            }
+        }
+    }
+
+    private static void saveCookies(Request<?> request, Connection connection) {
+        try {
+            URI uri = new URI(request.url());
+            NoHttp.getInitializeConfig().getCookieManager().put(uri, connection.responseHeaders().toResponseHeaders());
+        } catch (Exception e) {
+            Logger.e(e, "Save cookie filed: " + request.url() + ".");
+        }
+    }
+
+    private static BasicRequest<?> copyRequest(Request<?> request) {
+        BasicRequest<?> copy = new BasicRequest(request.url(), request.getRequestMethod());
+        copy.removeAll();
+        copy.removeAllHeader();
+        copy.getHeaders().setAll(request.getHeaders());
+        copy.setRedirectHandler(request.getRedirectHandler());
+        copy.setSSLSocketFactory(request.getSSLSocketFactory());
+        copy.setHostnameVerifier(request.getHostnameVerifier());
+        copy.setParamsEncoding(request.getParamsEncoding());
+        copy.setProxy(request.getProxy());
+        copy.setConnectTimeout(request.getConnectTimeout());
+        copy.setReadTimeout(request.getReadTimeout());
+        copy.setRetryCount(request.getRetryCount());
+        copy.setRetryPolicy(request.getRetryPolicy());
+        long remaining = request.getRemainingTime();
+        if (remaining != Long.MAX_VALUE) {
+            copy.setDeadline((int)Math.max(1, Math.min(remaining, Integer.MAX_VALUE)));
+            copy.startDeadline();
+        }
+        return copy;
+    }
+
+    private static Protocol readProtocol(BasicRequest<?> request, Connection connection) {
         Protocol result = new Protocol();
-        Connection connection = mHttpConnection.getConnection(request);
         result.headers = connection.responseHeaders();
         result.exception = connection.exception();
         if (result.exception == null && connection.serverStream() != null) {
             try {
                 result.body = IOUtils.toByteArray(connection.serverStream());
+            } catch (SocketTimeoutException e) {
+                result.exception = new TimeoutError("Request time out: " + request.url() + ".");
             } catch (IOException e) {
                 result.exception = e;
             }
@@ -242,7 +630,178 @@ public class RequestHandler {
         }
     }
 
-    private static class Protocol {
+    /**
+     * The attempts of a hedged request, the first successful one wins.
+     */
+    class Race {
+
+        private final String mHost;
+        private final List<Attempt> mAttempts = new ArrayList<>();
+        private int mRunning;
+        private Protocol mWinner;
+        private Protocol mFailure;
+
+        Race(String host) {
+            this.mHost = host;
+        }
+
+        /**
+         * Add an attempt to the race.
+         *
+         * @param queue the queue whose place the attempt takes, it is given back when the attempt finishes.
+         * @return null if the race is over.
+         */
+        synchronized Attempt add(BasicRequest<?> request, WorkQueue<?> queue) {
+            if (mWinner != null || (!mAttempts.isEmpty() && mRunning == 0)) return null;
+            Attempt attempt = new Attempt(this, request, queue);
+            mAttempts.add(attempt);
+            mRunning++;
+            return attempt;
+        }
+
+        /**
+         * The attempt is not executed.
+         */
+        synchronized void remove(Attempt attempt) {
+            if (!mAttempts.remove(attempt)) return;
+            mRunning--;
+            attempt.release();
+            notifyAll();
+        }
+
+        /**
+         * Whether no attempt has won and some attempts are being executed.
+         */
+        synchronized boolean isRunning() {
+            return mWinner == null && mRunning > 0;
+        }
+
+        /**
+         * Wait for the winner, or for all the attempts to fail.
+         */
+        synchronized Protocol await() throws InterruptedException {
+            while (mWinner == null && mRunning > 0) {
+                wait();
+            }
+            return mWinner != null ? mWinner : mFailure;
+        }
+
+        /**
+         * The connection is established, it is closed if the race is over.
+         *
+         * @return false if the race is over.
+         */
+        synchronized boolean onConnected(Attempt attempt, Connection connection) {
+            if (mWinner != null) return false;
+            attempt.mConnection = connection;
+            return true;
+        }
+
+        synchronized void onFinished(Attempt attempt, Protocol protocol, long latency) {
+            mRunning--;
+            attempt.mConnection = null;
+            if (mWinner == null) {
+                if (protocol.exception == null) {
+                    mWinner = protocol;
+                    mHedger.record(mHost, latency);
+                    abort();
+                } else {
+                    mFailure = protocol;
+                }
+            }
+            notifyAll();
+        }
+
+        /**
+         * Cancel the attempts being executed, their results are ignored.
+         */
+        synchronized void abort() {
+            if (mWinner == null) {
+                mWinner = new Protocol();
+                mWinner.exception = new InterruptedException("The request is aborted.");
+            }
+            for (Attempt attempt : mAttempts) {
+                attempt.mRequest.abort();
+                IOUtils.closeQuietly(attempt.mConnection);
+                attempt.mConnection = null;
+            }
+        }
+    }
+
+    private class Attempt
+      implements Runnable {
+
+        private final Race mRace;
+        private final BasicRequest<?> mRequest;
+        private final WorkQueue<?> mQueue;
+        private Connection mConnection;
+
+        Attempt(Race race, BasicRequest<?> request, WorkQueue<?> queue) {
+            this.mRace = race;
+            this.mRequest = request;
+            this.mQueue = queue;
+        }
+
+        @Override
+        public void run() {
+            long startTime = SystemClock.elapsedRealtime();
+            try {
+                Connection connection = mHttpConnection.getConnection(mRequest);
+                Protocol protocol;
+                if (mRace.onConnected(this, connection)) {
+                    protocol = readProtocol(mRequest, connection);
+                } else {
+                    IOUtils.closeQuietly(connection);
+                    protocol = new Protocol();
+                    protocol.exception = new InterruptedException("The attempt lost.");
+                }
+                mRace.onFinished(this, protocol, SystemClock.elapsedRealtime() - startTime);
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Give back the place of the queue.
+         */
+        void release() {
+            if (mQueue != null) mQueue.release(mRequest.url(), mRequest.getProxy());
+        }
+    }
+
+    /**
+     * The request that waits for the same request being executed without blocking a thread.
+     */
+    interface Follower {
+
+        Request<?> getRequest();
+
+        /**
+         * The follower is attached, it is called before the leader finishes.
+         */
+        void onAttached();
+
+        /**
+         * The leader finished, the request keeps the shared response, or it is executed by itself if the leader
+         * failed.
+         */
+        void onLanded();
+    }
+
+    private static class Flight {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        /**
+         * Guarded by the flights, no follower is added after the flight is removed.
+         */
+        private final List<Follower> followers = new ArrayList<>();
+        /**
+         * The successful response of the leader, null if it failed.
+         */
+        private volatile Protocol protocol;
+    }
+
+    static class Protocol {
         /**
          * Server response header.
          */
@@ -16,10 +16,20 @@
 package com.yanzhenjie.nohttp.rest;
 
 import com.yanzhenjie.nohttp.CancelerManager;
-import com.yanzhenjie.nohttp.HandlerDelivery;
+import com.yanzhenjie.nohttp.ConcurrencyLimit;
+import com.yanzhenjie.nohttp.Delivery;
+import com.yanzhenjie.nohttp.Logger;
+import com.yanzhenjie.nohttp.NoHttp;
+import com.yanzhenjie.nohttp.OnHighWaterListener;
+import com.yanzhenjie.nohttp.RejectPolicy;
+import com.yanzhenjie.nohttp.SchedulePolicy;
+import com.yanzhenjie.nohttp.WorkQueue;
+import com.yanzhenjie.nohttp.error.QueueFullError;
+import com.yanzhenjie.nohttp.error.QueueShutdownError;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -32,15 +42,21 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class RequestQueue {
 
     private AtomicInteger mInteger = new AtomicInteger(1);
-    private final BlockingQueue<Work<? extends Request<?>, ?>> mQueue = new PriorityBlockingQueue<>();
+    private final WorkQueue<Work<? extends Request<?>, ?>> mQueue = new WorkQueue<>();
     private final CancelerManager mCancelerManager = new CancelerManager();
-    private RequestDispatcher[] mDispatchers;
+    private volatile Delivery mDelivery;
+    private volatile Batcher mBatcher;
+    private final List<RequestDispatcher> mDispatchers = new ArrayList<>();
+    private volatile int mPoolSize;
+    private volatile long mKeepAlive;
+    private boolean isStarted;
+    private volatile boolean isShutdown;
 
     /**
      * @param threadPoolSize number of thread pool.
      */
     public RequestQueue(int threadPoolSize) {
-        mDispatchers = new RequestDispatcher[threadPoolSize];
+        mPoolSize = threadPoolSize;
     }
 
     /**
@@ -52,13 +68,213 @@ public class RequestQueue {
     public void start() {
         stop();
 
-        for (int i = 0; i < mDispatchers.length; i++) {
-            RequestDispatcher dispatcher = new RequestDispatcher(mQueue);
-            mDispatchers[i] = dispatcher;
+        synchronized (mDispatchers) {
+            isStarted = true;
+            isShutdown = false;
+            // The dispatchers that may exit are started on demand.
+            if (mKeepAlive == 0) spawn(mPoolSize);
+        }
+    }
+
+    /**
+     * Change the number of the dispatchers while the queue is running, the redundant dispatchers exit after the
+     * requests they are executing, the queued requests are kept.
+     *
+     * @param threadPoolSize the new number of thread pool.
+     */
+    public void resize(int threadPoolSize) {
+        if (threadPoolSize <= 0) throw new IllegalArgumentException("The threadPoolSize must be greater than 0.");
+        synchronized (mDispatchers) {
+            mPoolSize = threadPoolSize;
+            if (!isStarted) return;
+            while (mDispatchers.size() > threadPoolSize) {
+                mDispatchers.remove(mDispatchers.size() - 1).retire();
+            }
+            if (mKeepAlive == 0) spawn(threadPoolSize);
+            else spawn(Math.min(threadPoolSize, mDispatchers.size() + mQueue.size()));
+        }
+    }
+
+    /**
+     * Set how long an idle dispatcher waits for a request before it exits, the dispatchers are started again when
+     * the requests are added, so the queue holds no thread while the app is idle. It takes effect from the next wait
+     * of each dispatcher.
+     *
+     * @param keepAlive the time in milliseconds, the default value is 0, that is to say, the dispatchers never exit.
+     */
+    public void setKeepAliveTime(long keepAlive) {
+        if (keepAlive < 0) throw new IllegalArgumentException("The keepAlive can not be less than 0.");
+        synchronized (mDispatchers) {
+            mKeepAlive = keepAlive;
+            if (isStarted && keepAlive == 0) spawn(mPoolSize);
+        }
+    }
+
+    long getKeepAliveTime() {
+        return mKeepAlive;
+    }
+
+    /**
+     * The number of the dispatcher threads alive.
+     */
+    public int threadSize() {
+        synchronized (mDispatchers) {
+            return mDispatchers.size();
+        }
+    }
+
+    /**
+     * The dispatcher has waited for the keep-alive time without a request.
+     *
+     * @return true if the dispatcher should exit.
+     */
+    boolean onIdle(RequestDispatcher dispatcher) {
+        synchronized (mDispatchers) {
+            if (!mDispatchers.contains(dispatcher)) return true;
+            // A request was added just now, the dispatcher has to stay for it.
+            if (mQueue.size() > 0) return false;
+            mDispatchers.remove(dispatcher);
+            return true;
+        }
+    }
+
+    /**
+     * Start a dispatcher for the added request if no dispatcher is waiting.
+     */
+    private void ensureDispatcher() {
+        synchronized (mDispatchers) {
+            if (!isStarted || mDispatchers.size() >= mPoolSize) return;
+            for (RequestDispatcher dispatcher : mDispatchers) {
+                if (dispatcher.isIdle()) return;
+            }
+            spawn(mDispatchers.size() + 1);
+        }
+    }
+
+    private void spawn(int size) {
+        while (mDispatchers.size() < size) {
+            RequestDispatcher dispatcher = new RequestDispatcher(mQueue, this);
+            mDispatchers.add(dispatcher);
             dispatcher.start();
         }
     }
 
+    /**
+     * Set the order in which the requests are executed, the requests in the queue are reordered.
+     *
+     * @param policy the default value is {@link SchedulePolicy#PRIORITY}.
+     * @see SchedulePolicy
+     */
+    public void setSchedulePolicy(SchedulePolicy policy) {
+        mQueue.setPolicy(policy);
+    }
+
+    /**
+     * Set the maximum number of requests being executed for each host, the other requests of the host stay in
+     * the queue without blocking the requests of other hosts.
+     *
+     * @param max the default value is {@link Integer#MAX_VALUE}, that is to say, only limited by the thread pool.
+     */
+    public void setMaxRequestsPerHost(int max) {
+        mQueue.setMaxPerHost(max);
+    }
+
+    /**
+     * Set the maximum number of requests being executed for each route, the route is the scheme, host, port and
+     * proxy of the url.
+     *
+     * @param max the default value is {@link Integer#MAX_VALUE}, that is to say, only limited by the thread pool.
+     */
+    public void setMaxRequestsPerRoute(int max) {
+        mQueue.setMaxPerRoute(max);
+    }
+
+    /**
+     * Set the adaptive limit of the number of requests being executed, it is resized by the latency and the timeouts
+     * of the requests executed through the network, and never exceeds the thread pool.
+     *
+     * @param limit the default value is null, that is to say, only limited by the thread pool.
+     * @see ConcurrencyLimit.AIMD
+     * @see ConcurrencyLimit.Gradient
+     */
+    public void setConcurrencyLimit(ConcurrencyLimit limit) {
+        mQueue.setConcurrencyLimit(limit);
+    }
+
+    /**
+     * The current limit of the number of requests being executed.
+     *
+     * @return the smaller one of the {@link ConcurrencyLimit} and the thread pool.
+     */
+    public int getConcurrencyLimit() {
+        return Math.min(mPoolSize, mQueue.getConcurrencyLimit());
+    }
+
+    /**
+     * Set the maximum number of requests waiting in the queue, and what to do when a request is added to the full
+     * queue, the rejected or dropped requests fail with {@link QueueFullError}.
+     *
+     * @param capacity the default value is {@link Integer#MAX_VALUE}, that is to say, not limited.
+     * @param policy   the default value is {@link RejectPolicy#REJECT}.
+     * @see RejectPolicy
+     */
+    public void setCapacity(int capacity, RejectPolicy policy) {
+        mQueue.setCapacity(capacity, policy);
+    }
+
+    /**
+     * Listen to the number of requests waiting in the queue reaching the mark.
+     *
+     * @param mark     the high-water mark, 0 means no listening.
+     * @param listener {@link OnHighWaterListener}.
+     */
+    public void setHighWaterMark(int mark, OnHighWaterListener listener) {
+        mQueue.setHighWaterMark(mark, listener);
+    }
+
+    /**
+     * Set the Delivery of the callbacks of the requests in this queue, such as {@code FrameDelivery} for a large
+     * number of small requests, or {@code DirectDelivery} for the requests without UI.
+     *
+     * @param delivery the default value is null, that is to say, the Delivery of {@code InitializationConfig}.
+     * @see com.yanzhenjie.nohttp.InitializationConfig.Builder#delivery(Delivery)
+     */
+    public void setDelivery(Delivery delivery) {
+        this.mDelivery = delivery;
+    }
+
+    /**
+     * Send the GET requests to the host of the url in batches of {@code multipart/mixed}.
+     *
+     * @param url the url receiving the batch requests, such as {@code https://api.nohttp.net/batch}.
+     * @see #setBatching(String, int, int, BatchFormat)
+     */
+    public void setBatching(String url) {
+        setBatching(url, 10, 20, new BatchFormat.MultipartMixed());
+    }
+
+    /**
+     * Send the GET requests to the host of the url in batches. The dispatcher that takes such a request waits for
+     * the window if other such requests are waiting in the queue, then sends them together as one request, and each
+     * request gets its own response as usual, including the cache. The waiting dispatcher and the request keep their
+     * places in the queue and count against the host limit, so a long window delays the other requests of the host.
+     *
+     * @param url     the url receiving the batch requests, null means no batching.
+     * @param window  the time to wait for more requests in milliseconds.
+     * @param maxSize the maximum number of the requests in a batch.
+     * @param format  {@link BatchFormat}.
+     */
+    public void setBatching(String url, int window, int maxSize, BatchFormat format) {
+        if (url == null) {
+            mBatcher = null;
+            return;
+        }
+        if (window < 0) throw new IllegalArgumentException("The window can not be less than 0.");
+        if (maxSize < 2) throw new IllegalArgumentException("The maxSize must be greater than 1.");
+        if (format == null) throw new IllegalArgumentException("The format can not be null.");
+        mBatcher = new Batcher(mQueue, url, window, maxSize, format);
+    }
+
     /**
      * Add a request to the queue.
      *
@@ -69,10 +285,17 @@ public class RequestQueue {
      */
     public <T> void add(int what, final Request<T> request, OnResponseListener<T> listener) {
         Worker<? extends Request<T>, T> worker = new Worker<>(request);
+        Batcher batcher = mBatcher;
+        final Batcher requestBatcher = batcher != null && batcher.isBatchable(request) ? batcher : null;
         AsyncCallback<T> callback = new AsyncCallback<T>(listener) {
             @Override
             public void onFinish(int what) {
                 mCancelerManager.removeCancel(request);
+                request.setWorkQueue(null);
+                if (requestBatcher != null) {
+                    requestBatcher.unregister(request);
+                    request.setBatcher(null);
+                }
                 super.onFinish(what);
             }
         };
@@ -80,12 +303,63 @@ public class RequestQueue {
         work.setSequence(mInteger.incrementAndGet());
 
         callback.setQueue(mQueue);
+        Delivery delivery = mDelivery;
+        callback.setDelivery(delivery == null ? NoHttp.getInitializeConfig().getDelivery() : delivery);
         callback.setWork(work);
 
         request.setCancelable(work);
 
         mCancelerManager.addCancel(request, work);
-        mQueue.add(work);
+        request.setWorkQueue(mQueue);
+        request.setBatcher(requestBatcher);
+        if (requestBatcher != null) requestBatcher.register(work);
+        work.startDeadline();
+        if (isShutdown) {
+            String url = request.url();
+            work.fail(new QueueShutdownError("The queue has been shut down, the request is rejected: " + url + "."));
+            return;
+        }
+        // The add blocks while the queue is full, a dispatcher has to be there to take the requests.
+        ensureDispatcher();
+        Work<? extends Request<?>, ?> rejected = mQueue.add(work);
+        if (rejected != null) {
+            String url = rejected.getRequest().url();
+            rejected.fail(new QueueFullError("The queue is full, the request is rejected: " + url + "."));
+        }
+        // The queue was shut down while the request was being added.
+        if (isShutdown && mQueue.remove(work)) {
+            String url = request.url();
+            work.fail(new QueueShutdownError("The queue has been shut down, the request is rejected: " + url + "."));
+        }
+        ensureDispatcher();
+    }
+
+    /**
+     * Add a request to the queue, and get the future of its response.
+     *
+     * @param request {@link Request}.
+     * @param <T> {@link T}.
+     * @return the future completed with the response on the thread of the {@code Delivery}, it is completed with
+     * the failed response rather than an exception, canceling it cancels the request.
+     * @see ResultFuture
+     */
+    public <T> ResultFuture<Response<T>> submit(Request<T> request) {
+        return submit(0, request);
+    }
+
+    /**
+     * Add a request to the queue, and get the future of its response.
+     *
+     * @param what the {@code what} of the request.
+     * @param request {@link Request}.
+     * @param <T> {@link T}.
+     * @see #submit(Request)
+     */
+    public <T> ResultFuture<Response<T>> submit(int what, Request<T> request) {
+        ResultFuture<Response<T>> future = new ResultFuture<>();
+        future.setCancelable(request);
+        add(what, request, new FutureListener<>(future));
+        return future;
     }
 
     /**
@@ -110,16 +384,117 @@ public class RequestQueue {
         return mCancelerManager.size();
     }
 
+    /**
+     * The number of requests of the host that have not been executed yet.
+     *
+     * @param host such as: {@code www.nohttp.net}.
+     */
+    public int unStartSize(String host) {
+        return mQueue.queuedSize(host);
+    }
+
+    /**
+     * The number of requests of the host being executed.
+     *
+     * @param host such as: {@code www.nohttp.net}.
+     */
+    public int runningSize(String host) {
+        return mQueue.runningSize(host);
+    }
+
+    /**
+     * The hosts that have requests in the queue or being executed.
+     */
+    public Set<String> hosts() {
+        return mQueue.hosts();
+    }
+
     /**
      * Cancel all requests and stop all dispatchers in the queue.
      */
     public void stop() {
         cancelAll();
+        quitDispatchers();
+    }
+
+    /**
+     * <p>
+     * Stop accepting requests and stop all dispatchers after the requests finish, the requests added later fail with
+     * {@link QueueShutdownError}. It blocks until the requests finish or the timeout elapses, the requests still
+     * being executed then are canceled.
+     * </p>
+     * The queue can be started again by {@link #start()}, the returned requests can be added to it or another queue,
+     * their listeners have not been called.
+     *
+     * @param timeout        the time to wait in milliseconds.
+     * @param isFinishQueued true to execute the requests waiting in the queue, false to only wait for the requests
+     *                       being executed.
+     * @return the requests that were not executed.
+     */
+    public List<Request<?>> shutdown(long timeout, boolean isFinishQueued) {
+        List<Work<? extends Request<?>, ?>> left = new ArrayList<>();
+        synchronized (mDispatchers) {
+            isShutdown = true;
+            if (!isFinishQueued) left.addAll(mQueue.drain());
+            else if (isStarted) spawn(Math.min(mPoolSize, mDispatchers.size() + mQueue.size()));
+        }
+
+        boolean isEmpty;
+        try {
+            isEmpty = mQueue.awaitEmpty(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            isEmpty = false;
+        }
+        if (!isEmpty) left.addAll(mQueue.drain());
+
+        List<Request<?>> requests = new ArrayList<>(left.size());
+        for (Work<? extends Request<?>, ?> work : left) {
+            requests.add(takeBack(work));
+        }
+        if (!isEmpty) {
+            Logger.w("The queue is not empty in " + timeout + "ms, cancel the requests being executed.");
+            cancelAll();
+        }
+        quitDispatchers();
+        // The requests added while the dispatchers were quitting.
+        for (Work<? extends Request<?>, ?> work : mQueue.drain()) {
+            requests.add(takeBack(work));
+        }
+        return requests;
+    }
+
+    /**
+     * Whether the queue has been shut down and not started again.
+     */
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    /**
+     * Take the work that has not been executed out of the queue.
+     */
+    private Request<?> takeBack(Work<? extends Request<?>, ?> work) {
+        Request<?> request = work.getRequest();
+        mCancelerManager.removeCancel(request);
+        request.setCancelable(null);
+        request.setWorkQueue(null);
+        Batcher batcher = request.getBatcher();
+        if (batcher != null) {
+            batcher.unregister(request);
+            request.setBatcher(null);
+        }
+        work.discard();
+        return request;
+    }
 
-        for (RequestDispatcher dispatcher : mDispatchers) {
-            if (dispatcher != null) {
+    private void quitDispatchers() {
+        synchronized (mDispatchers) {
+            isStarted = false;
+            for (RequestDispatcher dispatcher : mDispatchers) {
                 dispatcher.quit();
             }
+            mDispatchers.clear();
         }
     }
 
@@ -143,14 +518,15 @@ public class RequestQueue {
       implements OnResponseListener<T> {
 
         private final OnResponseListener<T> mCallback;
-        private BlockingQueue<Work<? extends Request<?>, ?>> mQueue;
+        private WorkQueue<Work<? extends Request<?>, ?>> mQueue;
         private Work<? extends Request<?>, ?> mWork;
+        private Delivery mDelivery;
 
         AsyncCallback(OnResponseListener<T> callback) {
             this.mCallback = callback;
         }
 
-        public void setQueue(BlockingQueue<Work<? extends Request<?>, ?>> queue) {
+        public void setQueue(WorkQueue<Work<? extends Request<?>, ?>> queue) {
             this.mQueue = queue;
         }
 
@@ -158,9 +534,13 @@ public class RequestQueue {
             this.mWork = work;
         }
 
+        public void setDelivery(Delivery delivery) {
+            this.mDelivery = delivery;
+        }
+
         @Override
         public void onStart(final int what) {
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onStart(what);
@@ -170,7 +550,7 @@ public class RequestQueue {
 
         @Override
         public void onSucceed(final int what, final Response<T> response) {
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onSucceed(what, response);
@@ -180,7 +560,7 @@ public class RequestQueue {
 
         @Override
         public void onFailed(final int what, final Response<T> response) {
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onFailed(what, response);
@@ -190,16 +570,18 @@ public class RequestQueue {
 
         @Override
         public void onFinish(final int what) {
-            if (mQueue.contains(mWork)) {
-                mQueue.remove(mWork);
-            }
+            mQueue.remove(mWork);
 
-            HandlerDelivery.getInstance().post(new Runnable() {
+            post(new Runnable() {
                 @Override
                 public void run() {
                     mCallback.onFinish(what);
                 }
             });
         }
+
+        private void post(Runnable runnable) {
+            mDelivery.post(runnable);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,359 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp.rest;
+
+import com.yanzhenjie.nohttp.able.Cancelable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The result of an asynchronous request, it can be waited like a {@link Future}, or be listened and composed without
+ * holding a thread.
+ * </p>
+ * The listeners and functions are called on the thread that completes the future, for the request of
+ * {@link RequestQueue} it is the thread of the {@code Delivery} of the queue, so they should be short.
+ * Canceling the future cancels the request.
+ */
+public class ResultFuture<V>
+  implements Future<V>, Cancelable {
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private int mState = PENDING;
+    private V mResult;
+    private Exception mException;
+    private Cancelable mCancelable;
+    private List<OnCompleteListener<V>> mListeners = new ArrayList<>(1);
+
+    public ResultFuture() {
+    }
+
+    /**
+     * Set the task canceled with this future, if this future has been canceled, the task is canceled right away.
+     */
+    public void setCancelable(Cancelable cancelable) {
+        synchronized (this) {
+            if (mState != CANCELLED) {
+                mCancelable = cancelable;
+                return;
+            }
+        }
+        if (cancelable != null) cancelable.cancel();
+    }
+
+    /**
+     * Complete this future with the result.
+     *
+     * @return false if it has been completed.
+     */
+    public boolean complete(V result) {
+        return finish(SUCCEEDED, result, null);
+    }
+
+    /**
+     * Complete this future with the exception.
+     *
+     * @return false if it has been completed.
+     */
+    public boolean completeExceptionally(Exception exception) {
+        if (exception == null) throw new IllegalArgumentException("The exception can not be null.");
+        return finish(FAILED, null, exception);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(CANCELLED, null, null)) return false;
+
+        Cancelable cancelable;
+        synchronized (this) {
+            cancelable = mCancelable;
+        }
+        if (cancelable != null) cancelable.cancel();
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        cancel(true);
+    }
+
+    private boolean finish(int state, V result, Exception exception) {
+        List<OnCompleteListener<V>> listeners;
+        synchronized (this) {
+            if (mState != PENDING) return false;
+            mState = state;
+            mResult = result;
+            mException = exception;
+            listeners = mListeners;
+            mListeners = null;
+            notifyAll();
+        }
+        for (OnCompleteListener<V> listener : listeners) {
+            listener.onComplete(this);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    /**
+     * @deprecated use {@link #isCancelled()} instead.
+     */
+    @Deprecated
+    @Override
+    public boolean isCanceled() {
+        return isCancelled();
+    }
+
+    /**
+     * Whether it has been completed with a result.
+     */
+    public synchronized boolean isSucceed() {
+        return mState == SUCCEEDED;
+    }
+
+    /**
+     * Get the result without waiting.
+     *
+     * @return the result, or null if it has not been completed with a result.
+     */
+    public synchronized V getResult() {
+        return mResult;
+    }
+
+    /**
+     * Get the exception without waiting.
+     *
+     * @return the exception, or null if it has not been completed with an exception.
+     */
+    public synchronized Exception getException() {
+        return mException;
+    }
+
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (mState == PENDING) {
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return report();
+    }
+
+    private V report() throws ExecutionException {
+        if (mState == CANCELLED) throw new CancellationException();
+        if (mState == FAILED) throw new ExecutionException(mException);
+        return mResult;
+    }
+
+    /**
+     * Listen to the completion, if it has been completed, the listener is called right away.
+     */
+    public ResultFuture<V> addListener(OnCompleteListener<V> listener) {
+        synchronized (this) {
+            if (mState == PENDING) {
+                mListeners.add(listener);
+                return this;
+            }
+        }
+        listener.onComplete(this);
+        return this;
+    }
+
+    /**
+     * Transform the result when this future succeeds, the exception and cancellation are passed to the returned
+     * future, canceling the returned future cancels this future.
+     */
+    public <R> ResultFuture<R> then(final Function<? super V, ? extends R> function) {
+        final ResultFuture<R> next = new ResultFuture<>();
+        next.setCancelable(this);
+        addListener(new OnCompleteListener<V>() {
+            @Override
+            public void onComplete(ResultFuture<V> future) {
+                if (!passFailure(future, next)) {
+                    try {
+                        next.complete(function.apply(future.getResult()));
+                    } catch (Exception e) {
+                        next.completeExceptionally(e);
+                    }
+                }
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Start the next asynchronous task when this future succeeds, such as a request depending on the result of
+     * this request, the returned future is completed with the result of the next task.
+     */
+    public <R> ResultFuture<R> thenCompose(final Function<? super V, ResultFuture<R>> function) {
+        final ResultFuture<R> next = new ResultFuture<>();
+        next.setCancelable(this);
+        addListener(new OnCompleteListener<V>() {
+            @Override
+            public void onComplete(ResultFuture<V> future) {
+                if (passFailure(future, next)) return;
+
+                ResultFuture<R> task;
+                try {
+                    task = function.apply(future.getResult());
+                } catch (Exception e) {
+                    next.completeExceptionally(e);
+                    return;
+                }
+                if (task == null) {
+                    next.completeExceptionally(new NullPointerException("The function returns null."));
+                    return;
+                }
+                next.setCancelable(task);
+                task.addListener(new OnCompleteListener<R>() {
+                    @Override
+                    public void onComplete(ResultFuture<R> future) {
+                        if (!passFailure(future, next)) next.complete(future.getResult());
+                    }
+                });
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Pass the exception or cancellation to the next future.
+     *
+     * @return true if the future does not succeed.
+     */
+    private static boolean passFailure(ResultFuture<?> future, ResultFuture<?> next) {
+        if (future.isCancelled()) {
+            next.cancel(false);
+            return true;
+        }
+        Exception exception = future.getException();
+        if (exception != null) {
+            next.completeExceptionally(exception);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wait for all futures without holding a thread, the returned future is completed with the results in the
+     * order of the futures. If any future fails or is canceled, the returned future fails or is canceled, and the
+     * others are canceled.
+     */
+    @SafeVarargs
+    public static <V> ResultFuture<List<V>> allOf(ResultFuture<V>... futures) {
+        return allOf(Arrays.asList(futures));
+    }
+
+    /**
+     * @see #allOf(ResultFuture[])
+     */
+    public static <V> ResultFuture<List<V>> allOf(final List<ResultFuture<V>> futures) {
+        final ResultFuture<List<V>> all = new ResultFuture<>();
+        all.setCancelable(new Cancelable() {
+            @Override
+            public void cancel() {
+                for (ResultFuture<V> future : futures) {
+                    future.cancel(true);
+                }
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return isCancelled();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return all.isCancelled();
+            }
+        });
+
+        if (futures.isEmpty()) {
+            all.complete(new ArrayList<V>(0));
+            return all;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        OnCompleteListener<V> listener = new OnCompleteListener<V>() {
+            @Override
+            public void onComplete(ResultFuture<V> future) {
+                if (passFailure(future, all)) {
+                    // The failure does not cancel the others through all.cancel(), cancel them here.
+                    for (ResultFuture<V> other : futures) {
+                        other.cancel(true);
+                    }
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    List<V> results = new ArrayList<>(futures.size());
+                    for (ResultFuture<V> f : futures) {
+                        results.add(f.getResult());
+                    }
+                    all.complete(results);
+                }
+            }
+        };
+        for (ResultFuture<V> future : futures) {
+            future.addListener(listener);
+        }
+        return all;
+    }
+
+    public interface OnCompleteListener<V> {
+
+        /**
+         * The future is completed, with a result, an exception or cancellation.
+         */
+        void onComplete(ResultFuture<V> future);
+    }
+
+    public interface Function<I, O> {
+
+        O apply(I input) throws Exception;
+    }
+}
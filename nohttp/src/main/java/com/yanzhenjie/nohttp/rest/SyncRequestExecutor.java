@@ -43,6 +43,21 @@ public enum SyncRequestExecutor {
      * Perform a handle.
      */
     public <T> Response<T> execute(Request<T> request) {
-        return mRequestHandler.handle(request);
+        // The deadline started by the queue is reset by it.
+        boolean isStarted = request.getRemainingTime() != Long.MAX_VALUE;
+        try {
+            return mRequestHandler.handle(request);
+        } finally {
+            if (!isStarted) request.resetDeadline();
+        }
+    }
+
+    /**
+     * Attach the request to the same request being executed.
+     *
+     * @see RequestHandler#attach(RequestHandler.Follower)
+     */
+    boolean attach(RequestHandler.Follower follower) {
+        return mRequestHandler.attach(follower);
     }
 }
@@ -15,28 +15,46 @@
  */
 package com.yanzhenjie.nohttp.rest;
 
-import com.yanzhenjie.nohttp.Priority;
-import com.yanzhenjie.nohttp.able.Cancelable;
+import android.os.SystemClock;
 
+import com.yanzhenjie.nohttp.able.Schedulable;
+import com.yanzhenjie.nohttp.error.CircuitOpenError;
+import com.yanzhenjie.nohttp.error.NetworkError;
+import com.yanzhenjie.nohttp.error.TimeoutError;
+
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by YanZhenjie on 2018/2/13.
  */
 final class Work<T extends Request<S>, S>
   extends FutureTask<Response<S>>
-  implements Cancelable, Comparable<Work<? extends Request<?>, ?>> {
+  implements Schedulable {
+
+    private static final Timer DEADLINE_TIMER = new Timer("NoHttp Deadline", true);
+    /**
+     * The canceled deadlines stay in the timer until it is purged, it is purged every so many cancels.
+     */
+    private static final int PURGE_INTERVAL = 32;
+    private static final AtomicInteger CANCELED = new AtomicInteger();
 
     private Worker<T, S> mWorker;
     private final int mWhat;
     private final OnResponseListener<S> mCallback;
 
     private int mSequence;
+    private final long mAddTime = SystemClock.elapsedRealtime();
 
-    private boolean isStart;
-    private Object mLock;
+    private final AtomicBoolean isStart = new AtomicBoolean();
+    private final AtomicBoolean isExecuted = new AtomicBoolean();
+    private Thread mRunner;
+    private volatile TimerTask mDeadlineTask;
 
     public Work(Worker<T, S> worker, int what, OnResponseListener<S> callback) {
         super(worker);
@@ -45,30 +63,103 @@ final class Work<T extends Request<S>, S>
         this.mCallback = callback;
     }
 
-    public void setLock(Object lock) {
-        if (mLock != null) throw new IllegalStateException("The lock has been set.");
-        this.mLock = lock;
-    }
-
     public void setSequence(int sequence) {
         mSequence = sequence;
     }
 
+    @Override
+    public int getSequence() {
+        return mSequence;
+    }
+
+    @Override
+    public long getAddTime() {
+        return mAddTime;
+    }
+
+    /**
+     * Start the deadline of the request, the work fails with {@link TimeoutError} when it expires, whether it is
+     * waiting in the queue or being executed.
+     */
+    public void startDeadline() {
+        T request = mWorker.getRequest();
+        request.startDeadline();
+        long remaining = request.getRemainingTime();
+        if (remaining == Long.MAX_VALUE) return;
+
+        mDeadlineTask = new TimerTask() {
+            @Override
+            public void run() {
+                expire();
+            }
+        };
+        DEADLINE_TIMER.schedule(mDeadlineTask, Math.max(0, remaining));
+    }
+
+    private void expire() {
+        fail(new TimeoutError("The deadline of the request expired: " + mWorker.getRequest().url() + "."));
+        // Close the network of the request being executed, so the dispatcher is freed at once, its result is ignored.
+        // The deadline is kept until the execution returns, so the retries and redirects stop too.
+        synchronized (this) {
+            if (mRunner != null) mWorker.getRequest().abort();
+        }
+    }
+
+    /**
+     * Give up the work that has not been executed without any callback, such as it is taken back from the queue.
+     */
+    public void discard() {
+        cancelDeadline();
+        mWorker.getRequest().resetDeadline();
+    }
+
+    private void cancelDeadline() {
+        TimerTask task = mDeadlineTask;
+        if (task != null && task.cancel() && CANCELED.incrementAndGet() % PURGE_INTERVAL == 0)
+            DEADLINE_TIMER.purge();
+    }
+
+    /**
+     * Call back the start only once, the work may be started by the dispatcher, or failed by the deadline.
+     */
+    private void start() {
+        if (isStart.compareAndSet(false, true)) mCallback.onStart(mWhat);
+    }
+
     @Override
     public void run() {
-        if (mLock == null) throw new IllegalStateException("The lock is null.");
-        synchronized (mLock) {
-            mWorker.getRequest().start();
+        if (isDone() || !isExecuted.compareAndSet(false, true)) return;
+        mWorker.getRequest().start();
 
-            isStart = true;
-            mCallback.onStart(mWhat);
+        start();
+        synchronized (this) {
+            mRunner = Thread.currentThread();
+        }
+        try {
             super.run();
-            mLock.notify();
+        } finally {
+            synchronized (this) {
+                mRunner = null;
+                mWorker.getRequest().resetDeadline();
+            }
         }
     }
 
+    /**
+     * Fail the work that has not been executed, such as it is rejected by the queue.
+     */
+    public void fail(Exception e) {
+        start();
+        setException(e);
+    }
+
     @Override
     protected void done() {
+        cancelDeadline();
+        // The request being executed keeps its deadline until the execution returns.
+        synchronized (this) {
+            if (!isExecuted.get()) mWorker.getRequest().resetDeadline();
+        }
         try {
             Response<S> response = get();
             if (response.isSucceed()) {
@@ -77,10 +168,7 @@ final class Work<T extends Request<S>, S>
                 mCallback.onFailed(mWhat, response);
             }
         } catch (CancellationException e) {
-            if (!isStart) {
-                isStart = true;
-                mCallback.onStart(mWhat);
-            }
+            start();
         } catch (ExecutionException e) {
             Throwable cause = e.getCause();
             if (!isCancelled()) {
@@ -104,22 +192,62 @@ final class Work<T extends Request<S>, S>
         mCallback.onFinish(mWhat);
     }
 
+    /**
+     * Whether the work has been executed through the network, so its latency and result are a sample of the network.
+     */
+    boolean isNetworkSample() {
+        if (!isExecuted.get() || !isDone() || isCancelled()) return false;
+        Response<S> response = peekResponse();
+        if (response == null) return true;
+        // The request failed without being sent.
+        Exception e = response.getException();
+        if (e instanceof CircuitOpenError || e instanceof NetworkError) return false;
+        return !response.isFromCache();
+    }
+
+    /**
+     * Whether the work failed because of a timeout or the server is overloaded, it is a sign of congestion.
+     */
+    boolean isDropped() {
+        try {
+            Response<S> response = get();
+            int code = response.responseCode();
+            return response.getException() instanceof TimeoutError || code == 429 || code == 503;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof TimeoutError;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Response<S> peekResponse() {
+        try {
+            return get();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public T getRequest() {
+        return mWorker.getRequest();
+    }
+
     @Override
     public void cancel() {
         cancel(true);
     }
 
     @Override
-    public boolean isCanceled() {
-        return isCancelled();
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean isCanceled = super.cancel(mayInterruptIfRunning);
+        // The interrupt does not stop the hedged attempts blocked in the network.
+        if (isCanceled) mWorker.getRequest().abortRace();
+        return isCanceled;
     }
 
     @Override
-    public int compareTo(Work<? extends Request<?>, ?> o) {
-        Request<?> mr = mWorker.getRequest();
-        Request<?> or = o.mWorker.getRequest();
-        final Priority me = mr.getPriority();
-        final Priority it = or.getPriority();
-        return me == it ? mSequence - o.mSequence : it.ordinal() - me.ordinal();
+    public boolean isCanceled() {
+        return isCancelled();
     }
 }
\ No newline at end of file
@@ -18,20 +18,38 @@ package com.yanzhenjie.nohttp.ssl;
 import android.os.Build;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
 /**
+ * <p>
+ * Enable the TLS versions the system supports on the sockets, TLSv1.3 is enabled where it is available.
+ * </p>
+ * The sessions are cached by the {@link SSLContext} of the factory, so a new connection to a host resumes the
+ * session of the previous one instead of a full handshake, as long as the same factory is used. The cache can be
+ * configured if the factory is created from an {@link SSLContext}.
+ * <p>
  * Created by YanZhenjie on 2018/5/4.
+ * </p>
  */
 public class TLSSocketFactory
   extends SSLSocketFactory {
@@ -42,7 +60,7 @@ public class TLSSocketFactory
         // https://developer.android.com/about/versions/android-5.0-changes.html#ssl
         // https://developer.android.com/reference/javax/net/ssl/SSLSocket
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            PROTOCOL_ARRAY = new String[] {"TLSv1", "TLSv1.1", "TLSv1.2"};
+            PROTOCOL_ARRAY = new String[] {"TLSv1", "TLSv1.1", "TLSv1.2", "TLSv1.3"};
         } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
             PROTOCOL_ARRAY = new String[] {"SSLv3", "TLSv1", "TLSv1.1", "TLSv1.2"};
         } else {
@@ -68,28 +86,100 @@ public class TLSSocketFactory
         }
     };
 
-    private static void setSupportProtocolAndCipherSuites(Socket socket) {
-        if (socket instanceof SSLSocket) {
-            ((SSLSocket)socket).setEnabledProtocols(PROTOCOL_ARRAY);
+    /**
+     * Only the protocols the socket supports can be enabled.
+     */
+    private static void setSupportProtocolAndCipherSuites(SSLSocket socket) {
+        List<String> supported = Arrays.asList(socket.getSupportedProtocols());
+        List<String> protocols = new ArrayList<>(PROTOCOL_ARRAY.length);
+        for (String protocol : PROTOCOL_ARRAY) {
+            if (supported.contains(protocol)) protocols.add(protocol);
         }
+        if (!protocols.isEmpty()) socket.setEnabledProtocols(protocols.toArray(new String[protocols.size()]));
     }
 
     private SSLSocketFactory delegate;
+    private SSLSessionContext mSessionContext;
+    private boolean isSessionTickets = true;
+    private String[] mApplicationProtocols;
+    private HandshakeListener mHandshakeListener;
 
     public TLSSocketFactory() {
         try {
             SSLContext sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, new TrustManager[] {DEFAULT_TRUST_MANAGERS}, new SecureRandom());
             delegate = sslContext.getSocketFactory();
+            mSessionContext = sslContext.getClientSessionContext();
         } catch (GeneralSecurityException e) {
             throw new AssertionError(); // The system has no TLS. Just give up.
         }
     }
 
+    /**
+     * @param sslContext an initialized context, its client session cache is used.
+     */
+    public TLSSocketFactory(SSLContext sslContext) {
+        this.delegate = sslContext.getSocketFactory();
+        this.mSessionContext = sslContext.getClientSessionContext();
+    }
+
     public TLSSocketFactory(SSLSocketFactory factory) {
         this.delegate = factory;
     }
 
+    /**
+     * Set the max number of the sessions in the cache, 0 means no limit.
+     *
+     * @throws IllegalStateException the factory is not created from an {@link SSLContext}.
+     */
+    public void setSessionCacheSize(int size) {
+        if (size < 0) throw new IllegalArgumentException("The size can not be less than 0.");
+        sessionContext().setSessionCacheSize(size);
+    }
+
+    /**
+     * Set the time a session can be resumed in seconds, 0 means no limit.
+     *
+     * @throws IllegalStateException the factory is not created from an {@link SSLContext}.
+     */
+    public void setSessionTimeout(int seconds) {
+        if (seconds < 0) throw new IllegalArgumentException("The seconds can not be less than 0.");
+        sessionContext().setSessionTimeout(seconds);
+    }
+
+    /**
+     * Whether to ask the server for a session ticket, so the session can be resumed without the session cache of
+     * the server. It works on Android, the JVM decides it by {@code jdk.tls.client.enableSessionTicketExtension}.
+     *
+     * @param enable the default value is true.
+     */
+    public void setSessionTickets(boolean enable) {
+        this.isSessionTickets = enable;
+    }
+
+    /**
+     * Set the ALPN protocols offered to the server, such as {@code http/1.1}. Only the protocols the
+     * {@code NetworkExecutor} speaks can be offered, OkHttp offers its own protocols and ignores them.
+     *
+     * @param protocols null means no ALPN.
+     */
+    public void setApplicationProtocols(String... protocols) {
+        this.mApplicationProtocols = protocols == null || protocols.length == 0 ? null : protocols.clone();
+    }
+
+    /**
+     * Set the listener of the handshakes, it is told whether each connection resumed a session.
+     */
+    public void setHandshakeListener(HandshakeListener listener) {
+        this.mHandshakeListener = listener;
+    }
+
+    private SSLSessionContext sessionContext() {
+        if (mSessionContext == null)
+            throw new IllegalStateException("The session cache can only be configured if it is created from an " +
+                                            "SSLContext.");
+        return mSessionContext;
+    }
 
     @Override
     public String[] getDefaultCipherSuites() {
@@ -103,45 +193,112 @@ public class TLSSocketFactory
 
     @Override
     public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
-        Socket ssl = delegate.createSocket(s, host, port, autoClose);
-        setSupportProtocolAndCipherSuites(ssl);
-        return ssl;
+        return configure(delegate.createSocket(s, host, port, autoClose));
     }
 
     @Override
     public Socket createSocket(String host, int port) throws IOException {
-        Socket ssl = delegate.createSocket(host, port);
-        setSupportProtocolAndCipherSuites(ssl);
-        return ssl;
+        return configure(delegate.createSocket(host, port));
     }
 
     @Override
     public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
       throws IOException {
-        Socket ssl = delegate.createSocket(host, port, localHost, localPort);
-        setSupportProtocolAndCipherSuites(ssl);
-        return ssl;
+        return configure(delegate.createSocket(host, port, localHost, localPort));
     }
 
     @Override
     public Socket createSocket(InetAddress host, int port) throws IOException {
-        Socket ssl = delegate.createSocket(host, port);
-        setSupportProtocolAndCipherSuites(ssl);
-        return ssl;
+        return configure(delegate.createSocket(host, port));
     }
 
     @Override
     public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
       throws IOException {
-        Socket ssl = delegate.createSocket(address, port, localAddress, localPort);
-        setSupportProtocolAndCipherSuites(ssl);
-        return ssl;
+        return configure(delegate.createSocket(address, port, localAddress, localPort));
     }
 
     @Override
     public Socket createSocket() throws IOException {
-        Socket ssl = delegate.createSocket();
-        setSupportProtocolAndCipherSuites(ssl);
-        return ssl;
+        return configure(delegate.createSocket());
+    }
+
+    private Socket configure(Socket socket) {
+        if (!(socket instanceof SSLSocket)) return socket;
+        SSLSocket sslSocket = (SSLSocket)socket;
+        setSupportProtocolAndCipherSuites(sslSocket);
+        // The Android sockets do not ask for a ticket by default.
+        if (isSessionTickets) invoke(sslSocket, "setUseSessionTickets", boolean.class, true);
+        if (mApplicationProtocols != null) setApplicationProtocols(sslSocket, mApplicationProtocols);
+        HandshakeListener listener = mHandshakeListener;
+        if (listener != null) sslSocket.addHandshakeCompletedListener(new ResumptionListener(listener));
+        return socket;
+    }
+
+    private static void setApplicationProtocols(SSLSocket socket, String[] protocols) {
+        // Android 10 and Java 9.
+        SSLParameters parameters = socket.getSSLParameters();
+        if (invoke(parameters, "setApplicationProtocols", String[].class, protocols)) {
+            socket.setSSLParameters(parameters);
+            return;
+        }
+        // Android 5.0, the protocols are length-prefixed.
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (String protocol : protocols) {
+                builder.append((char)protocol.length()).append(protocol);
+            }
+            invoke(socket, "setAlpnProtocols", byte[].class, builder.toString().getBytes("ISO-8859-1"));
+        } catch (UnsupportedEncodingException ignored) {
+        }
+    }
+
+    /**
+     * Invoke the method of the platform if it has the method.
+     *
+     * @return false if it does not have the method.
+     */
+    private static boolean invoke(Object target, String name, Class<?> type, Object value) {
+        try {
+            Method method = target.getClass().getMethod(name, type);
+            method.invoke(target, value);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * <p>Receive the handshakes of the sockets created by the factory.</p>
+     */
+    public interface HandshakeListener {
+
+        /**
+         * The handshake of a connection completed, called on the thread of the handshake.
+         *
+         * @param session   the session of the connection.
+         * @param isResumed whether the session is resumed rather than negotiated by a full handshake.
+         */
+        void onHandshakeCompleted(SSLSession session, boolean isResumed);
+    }
+
+    /**
+     * A resumed session was created before the socket, a full handshake creates a new session.
+     */
+    private static class ResumptionListener
+      implements HandshakeCompletedListener {
+
+        private final HandshakeListener mListener;
+        private final long mCreateTime = System.currentTimeMillis();
+
+        private ResumptionListener(HandshakeListener listener) {
+            this.mListener = listener;
+        }
+
+        @Override
+        public void handshakeCompleted(HandshakeCompletedEvent event) {
+            SSLSession session = event.getSession();
+            mListener.onHandshakeCompleted(session, session.getCreationTime() < mCreateTime);
+        }
     }
-}
\ No newline at end of file
+}
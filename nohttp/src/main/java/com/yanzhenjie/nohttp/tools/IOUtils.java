@@ -69,6 +69,31 @@ public class IOUtils {
             urlConnection.disconnect();
     }
 
+    /**
+     * Read the stream to the end and close it.
+     *
+     * @param inputStream the stream.
+     * @param maxSize     the max number of bytes to read.
+     * @return true if the end of the stream is reached, false if there are more than the max bytes or it failed.
+     */
+    public static boolean drainQuietly(InputStream inputStream, long maxSize) {
+        if (inputStream == null) return true;
+        try {
+            byte[] buffer = new byte[4096];
+            long size = 0;
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                size += len;
+                if (size > maxSize) return false;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
     public static BufferedInputStream toBufferedInputStream(InputStream inputStream) {
         return inputStream instanceof BufferedInputStream ? (BufferedInputStream) inputStream : new BufferedInputStream(inputStream);
     }
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import com.yanzhenjie.nohttp.tools.HeaderUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * <p>The response of an OkHttp call, the request body has been written by the {@link OkHttpCallNetworkExecutor}.</p>
+ */
+class OkHttpCallNetwork
+  implements Network {
+
+    private final Response mResponse;
+
+    OkHttpCallNetwork(Response response) {
+        this.mResponse = response;
+    }
+
+    /**
+     * The body has been written by the executor.
+     *
+     * @return null.
+     */
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return null;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        return mResponse.code();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        Map<String, List<String>> headers = new LinkedHashMap<>(mResponse.headers().toMultimap());
+        headers.put(Headers.HEAD_KEY_RESPONSE_PROTOCOL, Collections.singletonList(mResponse.protocol().toString()));
+        return headers;
+    }
+
+    @Override
+    public InputStream getServerStream(int responseCode, Headers headers) throws IOException {
+        ResponseBody body = mResponse.body();
+        if (body == null) return null;
+        InputStream inputStream = body.byteStream();
+        // OkHttp only decompresses the response when it adds the Accept-Encoding itself.
+        if (HeaderUtils.isGzipContent(headers.getContentEncoding())) inputStream = new GZIPInputStream(inputStream);
+        return inputStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The connection is kept in the pool, an HTTP/2 connection only resets the stream of the response.
+        mResponse.close();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+/**
+ * <p>
+ * Execute the requests by the OkHttp {@code Call} rather than the {@code HttpURLConnection} shim, the request body
+ * is streamed to the connection, and the requests to a host share one HTTP/2 connection if the server supports it.
+ * </p>
+ * The negotiated protocol is set to the response headers as {@link Headers#HEAD_KEY_RESPONSE_PROTOCOL}.
+ */
+public class OkHttpCallNetworkExecutor
+  implements NetworkExecutor, Preconnectable {
+
+    /**
+     * The max number of the clients derived for the settings of the requests.
+     */
+    private static final int MAX_CLIENTS = 16;
+
+    private final OkHttpClient mClient;
+    private final Map<ClientKey, OkHttpClient> mClients = new LinkedHashMap<ClientKey, OkHttpClient>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ClientKey, OkHttpClient> eldest) {
+            return size() > MAX_CLIENTS;
+        }
+    };
+
+    public OkHttpCallNetworkExecutor() {
+        this(URLConnectionFactory.getInstance().client());
+    }
+
+    /**
+     * @param client the root client, its connection pool and dispatcher are shared by all requests.
+     */
+    public OkHttpCallNetworkExecutor(OkHttpClient client) {
+        this.mClient = client;
+    }
+
+    @Override
+    public Network execute(BasicRequest<?> request) throws Exception {
+        Request.Builder builder = new Request.Builder().url(request.url());
+        Map<String, String> requestHeaders = request.getHeaders().toRequestHeaders();
+        for (Map.Entry<String, String> headerEntry : requestHeaders.entrySet()) {
+            String headKey = headerEntry.getKey();
+            String headValue = headerEntry.getValue();
+            if (TextUtils.isEmpty(headKey) || headValue == null) continue;
+            Logger.i(headKey + ": " + headValue);
+            builder.header(headKey, headValue);
+        }
+
+        RequestMethod method = request.getRequestMethod();
+        builder.method(method.getValue(), method.allowRequestBody() ? new StreamBody(request) : null);
+        Response response = client(request).newCall(builder.build()).execute();
+        return new OkHttpCallNetwork(response);
+    }
+
+    /**
+     * Send the request and put its connection into the connection pool of the client, a new connection is opened
+     * only if the pool has no idle connection to the host.
+     */
+    @Override
+    public boolean preconnect(BasicRequest<?> request) throws Exception {
+        Network network = execute(request);
+        try {
+            network.getResponseCode();
+        } finally {
+            network.close();
+        }
+        return true;
+    }
+
+    /**
+     * Get the client for the proxy, timeouts and SSL of the request, the clients are derived from the root client
+     * once for each setting.
+     */
+    private OkHttpClient client(BasicRequest<?> request) {
+        ClientKey key = new ClientKey(request);
+        synchronized (mClients) {
+            OkHttpClient client = mClients.get(key);
+            if (client == null) {
+                OkHttpClient.Builder builder = mClient.newBuilder()
+                  .proxy(key.proxy)
+                  .connectTimeout(key.connectTimeout, TimeUnit.MILLISECONDS)
+                  .readTimeout(key.readTimeout, TimeUnit.MILLISECONDS)
+                  .writeTimeout(key.readTimeout, TimeUnit.MILLISECONDS)
+                  // The redirects are handled by the HttpConnection.
+                  .followRedirects(false)
+                  .followSslRedirects(false);
+                if (key.sslSocketFactory != null) builder.sslSocketFactory(key.sslSocketFactory);
+                if (key.hostnameVerifier != null) builder.hostnameVerifier(key.hostnameVerifier);
+                client = builder.build();
+                mClients.put(key, client);
+            }
+            return client;
+        }
+    }
+
+    private static class ClientKey {
+
+        private final Proxy proxy;
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final SSLSocketFactory sslSocketFactory;
+        private final HostnameVerifier hostnameVerifier;
+
+        private ClientKey(BasicRequest<?> request) {
+            this.proxy = request.getProxy();
+            this.connectTimeout = request.getConnectTimeout();
+            this.readTimeout = request.getReadTimeout();
+            this.sslSocketFactory = request.getSSLSocketFactory();
+            this.hostnameVerifier = request.getHostnameVerifier();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ClientKey)) return false;
+            ClientKey key = (ClientKey)o;
+            return (proxy == null ? key.proxy == null : proxy.equals(key.proxy)) &&
+                   connectTimeout == key.connectTimeout && readTimeout == key.readTimeout &&
+                   sslSocketFactory == key.sslSocketFactory && hostnameVerifier == key.hostnameVerifier;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = proxy == null ? 0 : proxy.hashCode();
+            result = 31 * result + connectTimeout;
+            result = 31 * result + readTimeout;
+            result = 31 * result + System.identityHashCode(sslSocketFactory);
+            result = 31 * result + System.identityHashCode(hostnameVerifier);
+            return result;
+        }
+    }
+
+    /**
+     * The body is written to the connection by the request, so a large body is not held in the memory.
+     */
+    private static class StreamBody
+      extends RequestBody {
+
+        private final BasicRequest<?> mRequest;
+        private final MediaType mContentType;
+        private final long mContentLength;
+
+        private StreamBody(BasicRequest<?> request) {
+            this.mRequest = request;
+            String contentType = request.getContentType();
+            this.mContentType = TextUtils.isEmpty(contentType) ? null : MediaType.parse(contentType);
+            this.mContentLength = request.getContentLength();
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mContentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mContentLength;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // It may be written again when OkHttp retries on a stale pooled connection, the body is rewound.
+            mRequest.onWriteRequestBody(sink.outputStream());
+        }
+    }
+}
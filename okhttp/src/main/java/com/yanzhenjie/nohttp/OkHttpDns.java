@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2018 Yan Zhenjie.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.nohttp;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+/**
+ * <p>
+ * Resolve the hosts of OkHttp by the {@link Dns} of the {@link InitializationConfig}, OkHttp connects to the
+ * addresses in order and falls back to the next one if a connect fails.
+ * </p>
+ * The config is read at each lookup, so the client can be created before NoHttp is initialized.
+ */
+class OkHttpDns
+  implements okhttp3.Dns {
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        return NoHttp.getInitializeConfig().getDns().lookup(hostname);
+    }
+}
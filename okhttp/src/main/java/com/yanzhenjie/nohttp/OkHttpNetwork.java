@@ -30,9 +30,20 @@ import java.util.Map;
 public class OkHttpNetwork implements Network {
 
     private HttpURLConnection mUrlConnection;
+    private final boolean isReuse;
+    private int mResponseCode = -1;
 
     public OkHttpNetwork(HttpURLConnection urlConnection) {
+        this(urlConnection, false);
+    }
+
+    /**
+     * @param urlConnection {@link HttpURLConnection}.
+     * @param isReuse       release the connection to the pool of the client rather than disconnect it.
+     */
+    public OkHttpNetwork(HttpURLConnection urlConnection, boolean isReuse) {
         this.mUrlConnection = urlConnection;
+        this.isReuse = isReuse;
     }
 
     @Override
@@ -42,7 +53,8 @@ public class OkHttpNetwork implements Network {
 
     @Override
     public int getResponseCode() throws IOException {
-        return mUrlConnection.getResponseCode();
+        mResponseCode = mUrlConnection.getResponseCode();
+        return mResponseCode;
     }
 
     @Override
@@ -57,6 +69,9 @@ public class OkHttpNetwork implements Network {
 
     @Override
     public void close() throws IOException {
+        // The connection failed before the response can not be reused.
+        if (isReuse && mResponseCode > 0 && URLConnectionNetworkExecutor.release(mUrlConnection, mResponseCode))
+            return;
         IOUtils.closeQuietly(mUrlConnection);
     }
 
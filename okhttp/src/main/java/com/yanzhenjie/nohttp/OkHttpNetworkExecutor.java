@@ -19,20 +19,53 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
 
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
 /**
  * Created by Yan Zhenjie on 2016/10/15.
  */
-public class OkHttpNetworkExecutor implements NetworkExecutor {
+public class OkHttpNetworkExecutor implements NetworkExecutor, Preconnectable {
+
+    private final URLConnectionFactory mFactory;
+    private final boolean isReuse;
+
+    /**
+     * The connection is disconnected after each request.
+     */
+    public OkHttpNetworkExecutor() {
+        this.mFactory = URLConnectionFactory.getInstance();
+        this.isReuse = false;
+    }
+
+    /**
+     * Reuse the connections by the pool of the client, the rest of the response is read and closed rather than
+     * disconnected, so the next request to the host skips the TCP and TLS handshakes.
+     *
+     * @param maxIdleConnections the max number of idle connections kept in the pool.
+     * @param keepAliveDuration  the time an idle connection is kept in milliseconds.
+     */
+    public OkHttpNetworkExecutor(int maxIdleConnections, long keepAliveDuration) {
+        if (maxIdleConnections <= 0)
+            throw new IllegalArgumentException("The maxIdleConnections must be greater than 0.");
+        if (keepAliveDuration <= 0)
+            throw new IllegalArgumentException("The keepAliveDuration must be greater than 0.");
+        ConnectionPool pool = new ConnectionPool(maxIdleConnections, keepAliveDuration, TimeUnit.MILLISECONDS);
+        OkHttpClient client = URLConnectionFactory.getInstance().client().newBuilder().connectionPool(pool).build();
+        this.mFactory = new URLConnectionFactory(client);
+        this.isReuse = true;
+    }
 
     @Override
     public Network execute(BasicRequest<?> request) throws Exception {
         URL url = new URL(request.url());
-        HttpURLConnection connection = URLConnectionFactory.getInstance().open(url, request.getProxy());
+        HttpURLConnection connection = mFactory.open(url, request.getProxy());
         connection.setConnectTimeout(request.getConnectTimeout());
         connection.setReadTimeout(request.getReadTimeout());
         connection.setInstanceFollowRedirects(false);
@@ -70,6 +103,22 @@ public class OkHttpNetworkExecutor implements NetworkExecutor {
         }
         // 5. Connect
         connection.connect();
-        return new OkHttpNetwork(connection);
+        return new OkHttpNetwork(connection, isReuse);
+    }
+
+    /**
+     * Send the request and put its connection into the connection pool of the client, a new connection is opened
+     * only if the pool has no idle connection to the host.
+     */
+    @Override
+    public boolean preconnect(BasicRequest<?> request) throws Exception {
+        if (!isReuse) return false;
+        Network network = execute(request);
+        try {
+            network.getResponseCode();
+        } finally {
+            network.close();
+        }
+        return true;
     }
 }
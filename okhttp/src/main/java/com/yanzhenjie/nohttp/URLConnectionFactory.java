@@ -18,6 +18,8 @@ package com.yanzhenjie.nohttp;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import okhttp3.OkHttpClient;
 import okhttp3.internal.huc.OkHttpURLConnection;
@@ -39,14 +41,25 @@ public class URLConnectionFactory implements Cloneable {
         if (instance == null) {
             synchronized (URLConnectionFactory.class) {
                 if (instance == null) {
-                    instance = new URLConnectionFactory(new OkHttpClient());
+                    instance = new URLConnectionFactory(new OkHttpClient.Builder().dns(new OkHttpDns()).build());
                 }
             }
         }
         return instance;
     }
 
+    /**
+     * The max number of the clients derived for the proxies.
+     */
+    private static final int MAX_CLIENTS = 16;
+
     private OkHttpClient mClient;
+    private final Map<Proxy, OkHttpClient> mClients = new LinkedHashMap<Proxy, OkHttpClient>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Proxy, OkHttpClient> eldest) {
+            return size() > MAX_CLIENTS;
+        }
+    };
 
     public URLConnectionFactory(OkHttpClient client) {
         this.mClient = client;
@@ -84,11 +97,31 @@ public class URLConnectionFactory implements Cloneable {
      * @return {@link HttpURLConnection}.
      */
     public HttpURLConnection open(URL url, Proxy proxy) {
-        OkHttpClient copy = mClient.newBuilder().proxy(proxy).build();
+        OkHttpClient client = client(proxy);
 
         String protocol = url.getProtocol();
-        if (protocol.equals("http")) return new OkHttpURLConnection(url, copy);
-        if (protocol.equals("https")) return new OkHttpsURLConnection(url, copy);
+        if (protocol.equals("http")) return new OkHttpURLConnection(url, client);
+        if (protocol.equals("https")) return new OkHttpsURLConnection(url, client);
         throw new IllegalArgumentException("Unexpected protocol: " + protocol);
     }
+
+    /**
+     * Gets the client using the proxy, the clients are derived from the root client once for each proxy and share
+     * its connection pool and dispatcher, the least recently used one is dropped when there are too many.
+     *
+     * @param proxy {@link Proxy}, null to use the {@link java.net.ProxySelector}.
+     * @return {@link OkHttpClient}.
+     */
+    public OkHttpClient client(Proxy proxy) {
+        Proxy rootProxy = mClient.proxy();
+        if (proxy == null ? rootProxy == null : proxy.equals(rootProxy)) return mClient;
+        synchronized (mClients) {
+            OkHttpClient client = mClients.get(proxy);
+            if (client == null) {
+                client = mClient.newBuilder().proxy(proxy).build();
+                mClients.put(proxy, client);
+            }
+            return client;
+        }
+    }
 }